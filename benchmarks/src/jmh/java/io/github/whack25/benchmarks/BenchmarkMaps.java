@@ -0,0 +1,31 @@
+package io.github.whack25.benchmarks;
+
+import io.github.whack25.graphGen.GraphGenerator;
+import livegraph.Graph;
+
+/**
+ * Generates the maps the benchmarks run on. Every map comes from a fixed seed so runs are comparable.
+ */
+final class BenchmarkMaps {
+    static final long SEED = 20251017L;
+    static final double HOUSE_PROBABILITY = 0.1;
+
+    private BenchmarkMaps() {}
+
+    /**
+     * Generates a map. The generator is seeded, so the same arguments always give the same map.
+     */
+    static Graph<Integer> generate(int size, double coverageGoal) {
+        return generate(size, coverageGoal, 0);
+    }
+
+    /**
+     * Generates a map with its roads grown in tiles of the given size, 0 for none.
+     */
+    static Graph<Integer> generate(int size, double coverageGoal, int tileSize) {
+        GraphGenerator generator = new GraphGenerator(SEED);
+        generator.setPrintGraph(false);
+        generator.setTileSize(tileSize);
+        return generator.generate(size, size, coverageGoal, HOUSE_PROBABILITY);
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.whack25.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import livegraph.DistanceOracle;
+import livegraph.Graph;
+import livegraph.GraphNode;
+import livegraph.NodeType;
+import livegraph.SearchMode;
+
+/**
+ * Time to build a distance oracle, and the time for a base cost between two houses from it against a fresh search
+ * between them with Dijkstra and with landmarks, on a map with no robots. The oracle's build time and memory are
+ * printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DistanceOracleBenchmark {
+    private static final int PAIRS = 1024; // house pairs cycled through, a power of two
+
+    @Param({"30", "60", "120"})
+    public int size;
+
+    @Param({"8", "16"})
+    public int landmarks;
+
+    private Graph<Integer> graph;
+    private DistanceOracle oracle;
+    private final List<GraphNode<Integer, Integer>> from = new ArrayList<>();
+    private final List<GraphNode<Integer, Integer>> to = new ArrayList<>();
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        graph = BenchmarkMaps.generate(size, 0.35);
+        oracle = graph.buildDistanceOracle(landmarks);
+        System.out.println("Distance oracle for " + size + "x" + size + ": " + oracle);
+        List<GraphNode<Integer, Integer>> houses = new ArrayList<>();
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            if (graph.getNodeByIndex(i).getTileType() == NodeType.HOUSE) {
+                houses.add(graph.getNodeByIndex(i));
+            }
+        }
+        SplittableRandom random = new SplittableRandom(BenchmarkMaps.SEED);
+        for (int pair = 0; pair < PAIRS; pair++) {
+            from.add(houses.get(random.nextInt(houses.size())));
+            to.add(houses.get(random.nextInt(houses.size())));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public DistanceOracle build() {
+        return graph.buildDistanceOracle(landmarks);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int oracleBaseDistance() {
+        int pair = next++ & (PAIRS - 1);
+        return oracle.getBaseDistance(from.get(pair), to.get(pair));
+    }
+
+    @Benchmark
+    public GraphNode<Integer, Integer> dijkstraSearch() {
+        return search(SearchMode.DIJKSTRA);
+    }
+
+    @Benchmark
+    public GraphNode<Integer, Integer> landmarkSearch() {
+        return search(SearchMode.LANDMARKS);
+    }
+
+    private GraphNode<Integer, Integer> search(SearchMode searchMode) {
+        int pair = next++ & (PAIRS - 1);
+        graph.setSearchMode(searchMode);
+        return from.get(pair).getNextNodeOnPath(to.get(pair).getNodeId());
+    }
+}
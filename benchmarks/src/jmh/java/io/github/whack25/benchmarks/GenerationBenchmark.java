@@ -0,0 +1,36 @@
+package io.github.whack25.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import livegraph.Graph;
+
+/**
+ * Time to generate a map with GraphGenerator.generate at several sizes and coverage goals, with roads grown from the
+ * centre and in 32 cell tiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GenerationBenchmark {
+    @Param({"30", "60", "120"})
+    public int size;
+
+    @Param({"0.2", "0.35", "0.5"})
+    public double coverageGoal;
+
+    @Param({"0", "32"})
+    public int tileSize;
+
+    @Benchmark
+    public Graph<Integer> generate() {
+        return BenchmarkMaps.generate(size, coverageGoal, tileSize);
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.whack25.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import livegraph.Graph;
+import livegraph.GraphNode;
+
+/**
+ * Time for Graph.getNodeByCoordinates at random cells of the grid, as used by clicks and robot selection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LookupBenchmark {
+    private static final int LOOKUPS = 1024; // power of two so the cursor can wrap with a mask
+
+    @Param({"30", "120"})
+    public int size;
+
+    private Graph<Integer> graph;
+    private final int[] xs = new int[LOOKUPS];
+    private final int[] ys = new int[LOOKUPS];
+    private int cursor = 0;
+
+    @Setup
+    public void setUp() {
+        graph = BenchmarkMaps.generate(size, 0.35);
+        SplittableRandom random = new SplittableRandom(BenchmarkMaps.SEED);
+        for (int i = 0; i < LOOKUPS; i++) {
+            xs[i] = random.nextInt(graph.getGridWidth());
+            ys[i] = random.nextInt(graph.getGridHeight());
+        }
+    }
+
+    @Benchmark
+    public GraphNode<Integer, Integer> getNodeByCoordinates() {
+        int i = cursor++ & (LOOKUPS - 1);
+        return graph.getNodeByCoordinates(xs[i], ys[i]);
+    }
+}
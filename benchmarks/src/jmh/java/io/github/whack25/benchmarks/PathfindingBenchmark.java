@@ -0,0 +1,80 @@
+package io.github.whack25.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import livegraph.Graph;
+import livegraph.GraphNode;
+import livegraph.NodeType;
+import livegraph.SearchMode;
+
+/**
+ * Time for GraphNode.getNextNodeOnPath between two houses, either close together or on opposite sides of the map,
+ * with each search mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PathfindingBenchmark {
+    @Param({"30", "60"})
+    public int size;
+
+    @Param({"short", "crossMap"})
+    public String route;
+
+    @Param({"DIJKSTRA", "A_STAR", "BIDIRECTIONAL", "HIERARCHICAL", "LANDMARKS"})
+    public SearchMode searchMode;
+
+    private GraphNode<Integer, Integer> from;
+    private Integer destination;
+
+    @Setup
+    public void setUp() {
+        Graph<Integer> graph = BenchmarkMaps.generate(size, 0.35);
+        graph.setSearchMode(searchMode);
+        if (searchMode == SearchMode.LANDMARKS) {
+            graph.buildDistanceOracle(16);
+        }
+        List<GraphNode<Integer, Integer>> houses = new ArrayList<>();
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            if (graph.getNodeByIndex(i).getTileType() == NodeType.HOUSE) {
+                houses.add(graph.getNodeByIndex(i));
+            }
+        }
+
+        // pick the reachable pair of houses with the smallest or largest straight line distance
+        boolean shortest = route.equals("short");
+        int best = shortest ? Integer.MAX_VALUE : -1;
+        for (GraphNode<Integer, Integer> a : houses) {
+            for (GraphNode<Integer, Integer> b : houses) {
+                int distance = Math.abs(a.getX() - b.getX()) + Math.abs(a.getY() - b.getY());
+                if (a == b || (shortest ? distance >= best : distance <= best)) {
+                    continue;
+                }
+                if (a.getNextNodeOnPath(b.getNodeId()) != null) {
+                    best = distance;
+                    from = a;
+                    destination = b.getNodeId();
+                }
+            }
+        }
+        if (from == null) {
+            throw new IllegalStateException("No connected pair of houses on the benchmark map");
+        }
+    }
+
+    @Benchmark
+    public GraphNode<Integer, Integer> nextNodeOnPath() {
+        return from.getNextNodeOnPath(destination);
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.whack25.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import livegraph.Graph;
+import livegraph.GraphNode;
+import livegraph.NodeType;
+import livegraph.Robot;
+import livegraph.RobotMovement;
+
+/**
+ * Time for one Graph.tick() with a given number of robots placed on the map.
+ * Spawning is turned off so the robot density is set by the benchmark rather than by the spawn rate,
+ * and the map is rebuilt before each iteration so robots finishing does not drain it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TickBenchmark {
+    @Param({"60"})
+    public int size;
+
+    @Param({"0", "100", "500", "2000"})
+    public int robots;
+
+    @Param({"true", "false"})
+    public boolean incrementalRouting;
+
+    @Param({"true", "false"})
+    public boolean eventDrivenTicks;
+
+    private Graph<Integer> graph;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        graph = BenchmarkMaps.generate(size, 0.35);
+        graph.toggleSpawnRobots();
+        graph.setIncrementalRouting(incrementalRouting);
+        graph.setEventDrivenTicks(eventDrivenTicks);
+
+        List<GraphNode<Integer, Integer>> roads = new ArrayList<>();
+        List<GraphNode<Integer, Integer>> houses = new ArrayList<>();
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            GraphNode<Integer, Integer> node = graph.getNodeByIndex(i);
+            if (node.getTileType() == NodeType.HOUSE) {
+                houses.add(node);
+            } else if (node.getOccupancy() == 0) {
+                roads.add(node);
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(BenchmarkMaps.SEED);
+        for (int i = 0; i < robots && !roads.isEmpty() && !houses.isEmpty(); i++) {
+            GraphNode<Integer, Integer> start = roads.remove(random.nextInt(roads.size()));
+            GraphNode<Integer, Integer> destination = houses.get(random.nextInt(houses.size()));
+            start.addOccupier(new RobotMovement<>(new Robot<>(i, destination.getNodeId()), 1, start.getX(), start.getY()));
+        }
+    }
+
+    @Benchmark
+    public Graph<Integer> tick() {
+        graph.tick();
+        return graph;
+    }
+}
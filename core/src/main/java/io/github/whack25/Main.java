@@ -18,10 +18,12 @@ import com.badlogic.gdx.utils.ScreenUtils;
 import com.badlogic.gdx.utils.viewport.FitViewport;
 
 import io.github.whack25.graphGen.GraphGenerator;
+import io.github.whack25.render.TileLayer;
+import io.github.whack25.render.VisibleRegion;
+import io.github.whack25.simulation.SimulationLoop;
+import io.github.whack25.simulation.SimulationSnapshot;
 import livegraph.Graph;
 import livegraph.GraphNode;
-import livegraph.NodeType;
-import livegraph.RobotMovement;
 import robotHighlighting.RobotViewer;
 
 /** {@link com.badlogic.gdx.ApplicationListener} implementation shared by all platforms. */
@@ -47,13 +49,15 @@ public class Main extends ApplicationAdapter {
     Sprite bucketSprite;
     BitmapFont font;
     private Graph<Integer> gameGraph;
-    private final int MAX_FRAME_RATE = 2;
-    private int robotsSpawned = 0;
-    private int robotsHome = 0;
+    private TileLayer tileLayer; // the map's tiles, cached and only rebuilt where they change
+    private SimulationLoop simulation; // ticks gameGraph on a fixed timestep, the renderer only reads its snapshots
+    private final boolean SIMULATION_ON_OWN_THREAD = true; // tick on a separate thread so heavy ticks do not drop frames
+    private final double[] SIMULATION_SPEEDS = {1, 10, 100}; // selected with the 1, 2 and 3 keys
 
     private boolean shiftKeyPressed = false;
     private RobotViewer robotViewer;
     private boolean doHighlightRobot = false; 
+    private boolean showMetrics = false; // toggled with F3
 
     @Override
     public void create() {
@@ -64,23 +68,12 @@ public class Main extends ApplicationAdapter {
         shapeRenderer = new ShapeRenderer();
 
         GraphGenerator generator = new GraphGenerator();
-        for (int i = 0; i < 20; i++) { // generating the grid is rarely successful first time due to randomness, so retry a few times
-            try {
-                gameGraph = generator.generate(30, 30, 0.35, 0.1); //Graph.exampleGraph(); // generator.generate(20, 20, 0.4, 0.2);
-                break;
-            } catch (Exception e) {
-                System.err.println("Failed to generate the grid, retrying... (" + (i+1) + "/20)");
-                e.printStackTrace();
-            }
-        }
-
-        gameGraph.setOnRobotFinish(() -> {
-            robotsHome++;
-        });
+        gameGraph = generator.generate(30, 30, 0.35, 0.1); //Graph.exampleGraph(); // generator.generate(20, 20, 0.4, 0.2);
 
-        gameGraph.setOnRobotSpawn(() -> {
-            robotsSpawned++;
-        });
+        simulation = new SimulationLoop(gameGraph);
+        if (SIMULATION_ON_OWN_THREAD) {
+            simulation.start();
+        }
 
         spriteBatch = new SpriteBatch();
         image = new Texture("libgdx.png");
@@ -97,6 +90,7 @@ public class Main extends ApplicationAdapter {
         roadBlockedTexture = new Texture("roadBlocked.png");
         grassTexture = new Texture("Grass.png");
         carTexture = new Texture("car.png");
+        tileLayer = new TileLayer(gameGraph, houseTexture, roadTexture, roadBlockedTexture, grassTexture);
         dropSound = Gdx.audio.newSound(Gdx.files.internal("drop.mp3"));
         music = Gdx.audio.newMusic(Gdx.files.internal("music.mp3"));
         bucketSprite = new Sprite(bucketTexture);
@@ -116,12 +110,12 @@ public class Main extends ApplicationAdapter {
 
                         
                         if (shiftKeyPressed) {
-                            robotViewer.setNewRobot(worldCoordinates.x, worldCoordinates.y, gameGraph);
+                            robotViewer.setNewRobot(worldCoordinates.x, worldCoordinates.y, gameGraph, simulation.getSnapshot());
                             doHighlightRobot = true;
                         } else {
 
                             System.out.println("Clicked on grid square: (" + gridX + ", " + gridY + ")");
-                            gameGraph.toggleNodeEnabled(gridX, gridY);
+                            simulation.submit(() -> gameGraph.toggleNodeEnabled(gridX, gridY));
 
                             // Play sound on click
                             dropSound.play();
@@ -138,9 +132,8 @@ public class Main extends ApplicationAdapter {
     @Override
     public void render() {
         logic();
-        // waitBeforeFrame();
         input();
-        draw();
+        draw(simulation.getSnapshot());
 //        ScreenUtils.clear(0.15f, 0.15f, 0.2f, 1f);
 //        batch.begin();
 //        batch.draw(image, 140, 210);
@@ -152,30 +145,28 @@ public class Main extends ApplicationAdapter {
         viewport.update(width, height, true);
     }
 
-    /**
-     * Wait for frame stabilisation to cap frame rate.
-     */
-    private void waitBeforeFrame() {
-        float delta = Gdx.graphics.getDeltaTime();
-        float targetFrameTime = 1.0f / MAX_FRAME_RATE;
-        if (delta < targetFrameTime) {
-            try {
-                Thread.sleep((long) ((targetFrameTime - delta) * 1000));
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        } else {
-            // Frame took longer than target frame time; no wait needed
-            System.out.println("Warning: Frame time exceeded target frame time: " + delta + " seconds");
-        }
-    }
-
     private void input() {
         // Toggle robot spawning when "S" is tapped
         if (Gdx.input.isKeyJustPressed(Input.Keys.S)) {
-            gameGraph.toggleSpawnRobots();
+            simulation.submit(gameGraph::toggleSpawnRobots);
             System.out.println("Toggling robot spawning");
         }
+        // Change simulation speed with 1, 2 and 3, pause with P
+        for (int i = 0; i < SIMULATION_SPEEDS.length; i++) {
+            if (Gdx.input.isKeyJustPressed(Input.Keys.NUM_1 + i)) {
+                simulation.setSpeed(SIMULATION_SPEEDS[i]);
+                System.out.println("Simulation speed " + SIMULATION_SPEEDS[i] + "x");
+            }
+        }
+        if (Gdx.input.isKeyJustPressed(Input.Keys.P)) {
+            simulation.setPaused(!simulation.isPaused());
+        }
+        // Toggle the tick metrics overlay with F3, metrics are only measured while it is shown
+        if (Gdx.input.isKeyJustPressed(Input.Keys.F3)) {
+            showMetrics = !showMetrics;
+            boolean enabled = showMetrics;
+            simulation.submit(() -> gameGraph.setMetricsEnabled(enabled));
+        }
         shiftKeyPressed = Gdx.input.isKeyPressed(Input.Keys.SHIFT_LEFT);
 
 //        float speed = .25f;
@@ -189,10 +180,12 @@ public class Main extends ApplicationAdapter {
     }
 
     private void logic() {
-        gameGraph.tick();
+        if (!simulation.isRunningOnThread()) {
+            simulation.advance((long) (Gdx.graphics.getDeltaTime() * 1_000_000_000L));
+        }
     }
 
-    private void draw() {
+    private void draw(SimulationSnapshot snapshot) {
         //System.out.println(System.currentTimeMillis()+": drawing new frame at time");
 
         Gdx.gl.glClearColor(0, 0, 0, 1);
@@ -210,59 +203,62 @@ public class Main extends ApplicationAdapter {
         float worldHeight = viewport.getWorldHeight();
 
         spriteBatch.draw(backgroundTexture, 0, 0, worldWidth, worldHeight);
+        spriteBatch.end();
 
         // Add background textures
-        for (GraphNode<Integer, Integer> node : gameGraph.getNodes().values()) {
-            spriteBatch.draw(node.getTileType() == NodeType.HOUSE ? houseTexture :
-                             node.isBlocked() ? roadBlockedTexture :
-                             node.getTileType() == NodeType.ROAD ? roadTexture :
-                             grassTexture,
-                node.getX(), node.getY(), 1,1);
-
-        }
+        tileLayer.draw(viewport.getCamera(), snapshot);
 
-        // Draw robots
-        for (GraphNode<Integer, Integer> node : gameGraph.getNodes().values()) {
-            if (!node.getOccupiers().isEmpty()) {
-                for (RobotMovement<Integer, Integer> movement : node.getOccupiers()) {
-                    float progress = 1.0f - ((float) movement.getRemainingProgression() / (float) movement.getTotalEdgeWeight());
-                    spriteBatch.draw(carTexture,
-                        0.25f+node.getX()*progress + movement.getOriginX()*(1-progress),
-                        0.25f+node.getY()*progress + movement.getOriginY()*(1-progress),
-                        0.5f,0.5f);
-                }
+        // Draw robots on visible nodes, and those next to them as robots are drawn between their origin and node
+        spriteBatch.begin();
+        VisibleRegion visible = VisibleRegion.of(viewport.getCamera()).grow(1);
+        gameGraph.forEachNodeInRegion(visible.minX, visible.minY, visible.maxX, visible.maxY, node -> {
+            int index = node.getIndex();
+            if (index >= snapshot.getNodeCount()) return;
+            for (int i = snapshot.getRobotsStart(index); i < snapshot.getRobotsEnd(index); i++) {
+                spriteBatch.draw(carTexture,
+                    0.25f+snapshot.getRobotX(i),
+                    0.25f+snapshot.getRobotY(i),
+                    0.5f,0.5f);
             }
-        }
+        });
 
         // Draw text
-        font.draw(spriteBatch, robotsSpawned+"; "+robotsHome, 1, worldHeight - 1);
+        font.draw(spriteBatch, snapshot.getRobotsSpawned()+"; "+snapshot.getRobotsHome()+"  "+(int) simulation.getSpeed()+"x", 1, worldHeight - 1);
+        if (showMetrics && snapshot.getTickMetrics() != null) {
+            font.draw(spriteBatch, snapshot.getTickMetrics().toString(), 1, worldHeight - 3);
+            if (snapshot.getLastIncident() != null) {
+                font.draw(spriteBatch, snapshot.getIncidentCount() + " incidents, last at " + snapshot.getLastIncident(), 1, worldHeight - 5);
+            }
+        }
 
 //        bucketSprite.draw(spriteBatch);
 
         spriteBatch.end();
 
                 // Draw highlight
-        doHighlightRobot = doHighlightRobot ? robotViewer.updateRobotLocation() : false;
+        doHighlightRobot = doHighlightRobot ? robotViewer.updateRobotLocation(snapshot) : false;
         if (doHighlightRobot) {
-            System.out.println("render");
+            int robot = robotViewer.robot;
             shapeRenderer.setProjectionMatrix(viewport.getCamera().combined);
             Gdx.graphics.getGL20().glEnable(GL20.GL_BLEND);
             Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
             shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
             shapeRenderer.setColor(1, 0, 1, 0.3f);
             // draw car
-            float progress = 1.0f - ((float) robotViewer.robot.getRemainingProgression() / (float) robotViewer.robot.getTotalEdgeWeight());
-            shapeRenderer.circle(robotViewer.currentNode.getX()*progress + 0.5f+ robotViewer.robot.getOriginX()*(1-progress),
-                0.5f+robotViewer.currentNode.getY()*progress + robotViewer.robot.getOriginY()*(1-progress),
-                2f);
-            shapeRenderer.end();
-            shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
-            shapeRenderer.setColor(1, 0, 1, 0.3f);
-            // draw house;
-            shapeRenderer.circle(0.5f+gameGraph.getNode(robotViewer.robot.getRobot().destinationNodeId).getX(),
-                0.5f+gameGraph.getNode(robotViewer.robot.getRobot().destinationNodeId).getY(),
+            shapeRenderer.circle(0.5f+snapshot.getRobotX(robot),
+                0.5f+snapshot.getRobotY(robot),
                 2f);
             shapeRenderer.end();
+            if (snapshot.getRobotDestination(robot) >= 0) {
+                shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
+                shapeRenderer.setColor(1, 0, 1, 0.3f);
+                // draw house;
+                GraphNode<Integer, Integer> destination = gameGraph.getNodeByIndex(snapshot.getRobotDestination(robot));
+                shapeRenderer.circle(0.5f+destination.getX(),
+                    0.5f+destination.getY(),
+                    2f);
+                shapeRenderer.end();
+            }
         }
 
         
@@ -296,6 +292,8 @@ public class Main extends ApplicationAdapter {
 
     @Override
     public void dispose() {
+        simulation.stop();
+        tileLayer.dispose();
         spriteBatch.dispose();
         font.dispose();
         image.dispose();
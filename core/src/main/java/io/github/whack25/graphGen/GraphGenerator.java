@@ -1,6 +1,8 @@
 package io.github.whack25.graphGen;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
 import livegraph.Graph;
 import livegraph.GraphNode;
@@ -12,6 +14,33 @@ public class GraphGenerator {
     final int EDGE_UTURN = 25;
 
     final int MAX_COVERAGE_ITERATIONS = 1024;
+    final int MAX_FRUITLESS_WALKS = 64; // walks in a row that add no road before a tile stops growing
+    final int MIN_TILE_SIZE = 8;
+
+    private boolean printGraph = true; // print the generated graph to the console
+    private int tileSize = 0; // cells across each tile roads are grown in, 0 to grow them all from the centre
+
+    // each generation step draws from its own stream, split from one seed so a seed reproduces the same map
+    private final SplittableRandom publicTransportRandom;
+    private final SplittableRandom roadRandom;
+    private final SplittableRandom houseRandom;
+    private final SplittableRandom simulationSeedRandom; // seeds the random streams of the generated graphs
+
+    public GraphGenerator() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Creates a generator whose maps, and the simulations run on them, are reproducible from the seed.
+     * @param seed the seed
+     */
+    public GraphGenerator(long seed) {
+        SplittableRandom root = new SplittableRandom(seed);
+        publicTransportRandom = root.split();
+        roadRandom = root.split();
+        houseRandom = root.split();
+        simulationSeedRandom = root.split();
+    }
     /**
      * Generates a graph with the specified dimensions and coverage goal, creates houses on it, and displays it.
      * @param width Width of the graph
@@ -22,25 +51,53 @@ public class GraphGenerator {
     public Graph<Integer> generate(int width, int height, double coverageGoal, double probability) {
         GraphData graphData = convertGraphToCellGraph(generateGraph(generatePublicTransport(width, height), coverageGoal));
         createHousesOnGraph(graphData, probability);
-        displayGraph(graphData, 0, 0);
+        graphData.graph.setSeed(simulationSeedRandom.nextLong());
+        if (printGraph) {
+            displayGraph(graphData, 0, 0);
+        }
         return graphData.graph;
     }
 
+    /**
+     * Sets whether generate prints the generated graph to the console. Large or headless runs should turn this off.
+     * @param printGraph true to print the graph
+     */
+    public void setPrintGraph(boolean printGraph) {
+        this.printGraph = printGraph;
+    }
+
+    /**
+     * Sets the size of the square tiles roads are grown in. Tiles are grown independently on several threads,
+     * joined by straight roads along their borders, which makes very large grids generate many times faster but
+     * gives them a street grid every tileSize cells. A seed gives the same map whatever the number of threads.
+     * @param tileSize the tile size in generator cells, or 0 to grow every road from the centre of the map
+     */
+    public void setTileSize(int tileSize) {
+        if (tileSize != 0 && tileSize < MIN_TILE_SIZE) {
+            throw new IllegalArgumentException("Tiles must be at least " + MIN_TILE_SIZE + " cells across");
+        }
+        this.tileSize = tileSize;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
     public int[][] generatePublicTransport(int width, int height) {
         int[][] graph = new int[width][height];
 
         // generate random start point
-        int x1 =(int)(Math.random() * width);
-        int y1 = (int)(Math.random() * height);
+        int x1 = publicTransportRandom.nextInt(width);
+        int y1 = publicTransportRandom.nextInt(height);
 
-        int x2 = (int)(Math.random() * width);
-        int y2 = (int)(Math.random() * height);
+        int x2 = publicTransportRandom.nextInt(width);
+        int y2 = publicTransportRandom.nextInt(height);
 
         while ((x1 * x1 + y1 * y1)  - (x2 * x2 + y2 * y2) < ((width + height) / 3) * ((width + height) / 3)) { // ensure points are far enough apart
-            x1 =(int)(Math.random() * width);
-            y1 = (int)(Math.random() * height);
-            x2 = (int)(Math.random() * width);
-            y2 = (int)(Math.random() * height);
+            x1 = publicTransportRandom.nextInt(width);
+            y1 = publicTransportRandom.nextInt(height);
+            x2 = publicTransportRandom.nextInt(width);
+            y2 = publicTransportRandom.nextInt(height);
         }
 
         // draw line between the points
@@ -73,6 +130,7 @@ public class GraphGenerator {
     /**
      * Generates a graph with the specified dimensions and coverage goal.
      * Nodes generated are 2 thick so the graph cell-width is double the size of the input dimensions.
+     * With a tile size set, roads are grown in tiles on several threads, see {@link #setTileSize(int)}.
      * @param coverageGoal Desired coverage as a fraction (0.0 to 1.0)
      */
     public int[][] generateGraph(int[][] graph, double coverageGoal) {
@@ -80,33 +138,80 @@ public class GraphGenerator {
         int width = graph.length;
         int height = graph[0].length;
 
-        int coverage = 0; // number of covered cells
+        if (tileSize > 0 && (width > tileSize || height > tileSize)) {
+            growTiledRoads(graph, coverageGoal);
+        } else {
+            // generate random start point
+            int x = width / 2;  //roadRandom.nextInt(width);
+            int y = height / 2;//roadRandom.nextInt(height);
+            growRoads(graph, 0, 0, width, height, x, y, coverageGoal, roadRandom, null);
+        }
+        removeDisconnectedRoads(graph);
 
+        //add junctions
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                if (graph[i][j] > 0) {
+                    int paths = 0;
+                    // count adjacent paths
+                    if (i < width - 1 && graph[i+1][j] > 0) paths++;
+                    if (i > 0 && graph[i-1][j] > 0) paths++;
+                    if (j < height - 1 && graph[i][j+1] > 0) paths++;
+                    if (j > 0 && graph[i][j-1] > 0) paths++;
 
+                    if (paths >= 3) {
+                        graph[i][j] += 1; // mark as junction
+                    }
+                }
+            }
+        }
 
-        // generate random start point
-        int x = width / 2;  //(int)(Math.random() * width);
-        int y = height / 2;//(int)(Math.random() * height);
+        return graph;
+    }
+
+    /**
+     * Grows roads by random walks within a region of the grid until the roads added cover the coverage goal of it.
+     * The first walk starts from x, y and each later one from a random road cell. Cells outside the region are
+     * only read, to keep roads from running alongside roads already there.
+     * @param x0 the first column of the region
+     * @param y0 the first row of the region
+     * @param x1 the column after the last of the region
+     * @param y1 the row after the last of the region
+     * @param coverageGoal the fraction of the region to cover with new roads
+     * @param random where the walks draw from
+     * @param roadCells the road cells added so far, to restart walks from one of them, or null to look for road
+     *                  cells anywhere in the region by drawing random cells until one is a road
+     */
+    private void growRoads(int[][] graph, int x0, int y0, int x1, int y1, int x, int y, double coverageGoal,
+                           SplittableRandom random, RoadCells roadCells) {
+        int width = graph.length;
+        int height = graph[0].length;
+        int area = (x1 - x0) * (y1 - y0);
+
+        int coverage = 0; // number of covered cells
+        int fruitlessWalks = 0; // walks in a row that added nothing, only counted with a list of road cells
+        int lastCoverage = 0;
 
         // generate paths until coverage goal is met
-        while (coverage / (double)(width * height) < coverageGoal) {
+        while (coverage / (double) area < coverageGoal) {
             if (graph[x][y] == 0) { // if not path
                 graph[x][y] = 1; // mark as path
                 coverage++;
+                if (roadCells != null) roadCells.add(x, y);
             }
 
-            int direction = (int)(Math.random() * 4); // holds last direction. north = 0, east = 1, south = 2, west = 3
+            int direction = random.nextInt(4); // holds last direction. north = 0, east = 1, south = 2, west = 3
             int pathLength = 0;
 
             int iterations = 0;
 
-            while (coverage / (double)(width * height) < coverageGoal) { // while not maxed out coverage
+            while (coverage / (double) area < coverageGoal) { // while not maxed out coverage
                 if (iterations++ > MAX_COVERAGE_ITERATIONS) {
                     break;
                 }
-                int length = (int)(Math.random() * 5) + 2; // random length between 2 and 6
+                int length = random.nextInt(5) + 2; // random length between 2 and 6
 
-                int newDirection = ((direction + (int)(Math.random() * 3) - 1) + 4) % 4; // random direction -1 betwen 1
+                int newDirection = ((direction + random.nextInt(3) - 1) + 4) % 4; // random direction -1 betwen 1
 
                 // update x coordinate
                 int newX = x;
@@ -130,22 +235,22 @@ public class GraphGenerator {
                 }
 
                 // set correct bounds of graph
-                if (newX <= 0) {
-                    newX = 0;
-                    length = x;
+                if (newX <= x0) {
+                    newX = x0;
+                    length = x - x0;
                 }
-                else if (newX >= width) {
-                    newX = width - 1;
-                    length = width - x - 1;
+                else if (newX >= x1) {
+                    newX = x1 - 1;
+                    length = x1 - x - 1;
                 }
-                if (newY <= 0) {
-                    newY = 0;
-                    length = y;
+                if (newY <= y0) {
+                    newY = y0;
+                    length = y - y0;
                 }
-                else if (newY >= height)
+                else if (newY >= y1)
                 {
-                    newY = height - 1;
-                    length = height -  y - 1;
+                    newY = y1 - 1;
+                    length = y1 -  y - 1;
                 }
 
 
@@ -191,6 +296,7 @@ public class GraphGenerator {
                             if (paths < 1) { // if even number of paths adjacent, stop path
                                 graph[xInc][yInc] = 1; // mark as path
                                 coverage++;
+                                if (roadCells != null) roadCells.add(xInc, yInc);
                             }
                             else {
                                 break; // stop path if overlap
@@ -200,7 +306,7 @@ public class GraphGenerator {
 
                 // try end whole path randomly
                 pathLength += i - 1;
-                if ((Math.random() * pathLength) >= 15) {
+                if ((random.nextDouble() * pathLength) >= 15) {
                     break;
                 }
                 // update values
@@ -215,37 +321,141 @@ public class GraphGenerator {
 
             }
 
+            if (roadCells != null) {
+                // restart from a road cell grown so far, giving up on a region whose roads are boxed in
+                fruitlessWalks = coverage == lastCoverage ? fruitlessWalks + 1 : 0;
+                lastCoverage = coverage;
+                if (fruitlessWalks > MAX_FRUITLESS_WALKS) {
+                    break;
+                }
+                if (roadCells.size() > 0) {
+                    int cell = random.nextInt(roadCells.size());
+                    x = roadCells.x(cell);
+                    y = roadCells.y(cell);
+                }
+                continue;
+            }
+
             // generate new random start point on known paths ------------------- very inefficient, needs improvement
             boolean found = false;
             while (!found) {
-                x = (int)(Math.random() * width);
-                y = (int)(Math.random() * height);
+                x = x0 + random.nextInt(x1 - x0);
+                y = y0 + random.nextInt(y1 - y0);
 
                 if (graph[x][y] > 0) { // if not empty cell
                     found = true;
                 }
             }
         }
+    }
 
-        //add junctions
+    /**
+     * Grows roads in square tiles on several threads. Roads are first laid along every border between tiles, then
+     * each tile grows its own roads from a cell beside one of its borders, restarting walks from a list of the road
+     * cells it has grown. A tile only writes to its own cells and the borders keep tiles from touching, so the tiles
+     * need no locking and the map depends only on the seed, not on how the tiles are scheduled.
+     */
+    private void growTiledRoads(int[][] graph, double coverageGoal) {
+        int width = graph.length;
+        int height = graph[0].length;
+        int tilesX = (width + tileSize - 1) / tileSize;
+        int tilesY = (height + tileSize - 1) / tileSize;
+
+        // the last column and row of every tile but those at the far edges are border roads
+        int borderCells = 0;
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                boolean border = (i % tileSize == tileSize - 1 && i < width - 1) || (j % tileSize == tileSize - 1 && j < height - 1);
+                if (border && graph[i][j] == 0) {
+                    graph[i][j] = 1; // mark as path
+                    borderCells++;
+                }
+            }
+        }
+        int interiorCells = (width - (tilesX - 1)) * (height - (tilesY - 1));
+        double tileCoverageGoal = Math.max(0, (coverageGoal * width * height - borderCells) / interiorCells);
+
+        SplittableRandom[] tileRandoms = new SplittableRandom[tilesX * tilesY];
+        for (int t = 0; t < tileRandoms.length; t++) {
+            tileRandoms[t] = roadRandom.split();
+        }
+        IntStream.range(0, tileRandoms.length).parallel().forEach(t -> {
+            int tileX = t % tilesX;
+            int tileY = t / tilesX;
+            int x0 = tileX * tileSize;
+            int y0 = tileY * tileSize;
+            int x1 = tileX == tilesX - 1 ? width : x0 + tileSize - 1;
+            int y1 = tileY == tilesY - 1 ? height : y0 + tileSize - 1;
+            // start beside a border road, so every tile's roads join up with the rest
+            int x = (x0 + x1) / 2;
+            int y = (y0 + y1) / 2;
+            if (tilesX > 1) {
+                x = x1 < width ? x1 - 1 : x0;
+            } else {
+                y = y1 < height ? y1 - 1 : y0;
+            }
+            growRoads(graph, x0, y0, x1, y1, x, y, tileCoverageGoal, tileRandoms[t], new RoadCells());
+        });
+    }
+
+    /**
+     * Removes every road that cannot be reached from the largest network of roads, found by a union-find over
+     * neighbouring road cells. Walks that stop beside a road and restarts on the public transport line leave small
+     * fragments behind that robots at their houses could never leave.
+     * @return the number of road cells removed
+     */
+    int removeDisconnectedRoads(int[][] graph) {
+        int width = graph.length;
+        int height = graph[0].length;
+        int[] parents = new int[width * height]; // cell i * height + j, a root is its own parent
+        for (int cell = 0; cell < parents.length; cell++) {
+            parents[cell] = cell;
+        }
         for (int i = 0; i < width; i++) {
             for (int j = 0; j < height; j++) {
                 if (graph[i][j] > 0) {
-                    int paths = 0;
-                    // count adjacent paths
-                    if (i < width - 1 && graph[i+1][j] > 0) paths++;
-                    if (i > 0 && graph[i-1][j] > 0) paths++;
-                    if (j < height - 1 && graph[i][j+1] > 0) paths++;
-                    if (j > 0 && graph[i][j-1] > 0) paths++;
+                    if (i > 0 && graph[i-1][j] > 0) union(parents, i * height + j, (i - 1) * height + j);
+                    if (j > 0 && graph[i][j-1] > 0) union(parents, i * height + j, i * height + j - 1);
+                }
+            }
+        }
 
-                    if (paths >= 3) {
-                        graph[i][j] += 1; // mark as junction
+        int[] sizes = new int[parents.length];
+        int largest = -1;
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                if (graph[i][j] > 0) {
+                    int root = find(parents, i * height + j);
+                    sizes[root]++;
+                    if (largest < 0 || sizes[root] > sizes[largest]) {
+                        largest = root;
                     }
                 }
             }
         }
 
-        return graph;
+        int removed = 0;
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                if (graph[i][j] > 0 && find(parents, i * height + j) != largest) {
+                    graph[i][j] = 0;
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    private static int find(int[] parents, int cell) {
+        while (parents[cell] != cell) {
+            parents[cell] = parents[parents[cell]]; // path halving
+            cell = parents[cell];
+        }
+        return cell;
+    }
+
+    private static void union(int[] parents, int a, int b) {
+        parents[find(parents, a)] = find(parents, b);
     }
 
     // generate ID for nodes
@@ -254,179 +464,22 @@ public class GraphGenerator {
     }
 
     /**
-     * Converts a 2D int array graph representation to a graph.
+     * Converts a 2D int array graph representation to a graph. Each cell becomes a 2x2 block of lane nodes, laid out
+     * from a table of patterns by which of the cell's neighbours are roads, and only the largest strongly connected
+     * set of lanes is kept, so that every house can reach every other; the positions of lanes left out stay 0 in the
+     * node table.
      * @param table
      * @return
      */
     public GraphData convertGraphToCellGraph(int[][] table) {
-        Graph<Integer> graph = new Graph<Integer>(new HashMap<Integer, GraphNode<Integer, Integer>>(), table.length * 2, table[0].length * 2, () -> {}, () -> {});
-
-        int width = table.length;
-        int height = table[0].length;
-
-        int[][] nodeTable = new int[width * 2][height * 2];
-        // generate nodes for all corridors and junctions
-        for (int i = 0; i < table.length; i++) {
-            for (int j = 0; j < table[i].length; j++) {
-                NodeType type = table[i][j] > 2 ? NodeType.TRACK : NodeType.ROAD;
-                if (table[i][j] > 0) {
-                    nodeTable[i*2][j*2] = GenerateId(2 * i, 2 * j, width * 2);
-                    graph.addNode(new GraphNode<>(nodeTable[i*2][j*2], 2 * i, 2 * j, type, new ArrayList<>(), new ArrayList<>(), () -> {}));
-                    nodeTable[i*2 + 1][j*2] = GenerateId(2 * i + 1, 2 * j, width * 2);
-                    graph.addNode(new GraphNode<>(nodeTable[i*2 + 1][j*2], 2 * i + 1, 2 * j, type, new ArrayList<>(), new ArrayList<>(), () -> {}));
-                    nodeTable[i*2][j*2 + 1] = GenerateId(2 * i, 2 * j + 1, width * 2);
-                    graph.addNode(new GraphNode<>(nodeTable[i*2][j*2 + 1], 2 * i, 2 * j + 1, type, new ArrayList<>(), new ArrayList<>(), () -> {}));
-                    nodeTable[i*2 + 1][j*2 + 1] = GenerateId(2 * i + 1, 2 * j + 1, width * 2);
-                    graph.addNode(new GraphNode<>(nodeTable[i*2 + 1][j*2 + 1], 2 * i + 1, 2 * j + 1, type, new ArrayList<>(), new ArrayList<>(), () -> {}));
-                }
-            }
-        }
+        Graph<Integer> graph = new Graph<Integer>(table.length * 2, table[0].length * 2);
 
-        // add edges for all nodes
-        // done in sets of 2x2 cells as per graph node
+        int[][] nodeTable = new int[table.length * 2][table[0].length * 2];
+        // lanes are laid out by table from each cell's road neighbours, and checked before they go in the graph
+        LaneBuilder lanes = new LaneBuilder(table, EDGE_STRAIGHT, EDGE_UTURN);
 
-        for (int i = 0; i < width; i++) {
-            //System.out.println("row: " + i);
-            for (int j = 0; j < height; j++) {
-                //System.out.println("column: " + j);
-                int[] directions = new int[4];
-                int sum = 0;
-
-                if (i < width - 1 && table[i+1][j] > 0) {
-                    directions[1] = 1;
-                    sum++;
-                }
-                if (i > 0 && table[i-1][j] > 0) {
-                    directions[3] = 1;
-                    sum++;
-                }
-                if (j < height - 1 && table[i][j+1] > 0) {
-                    directions[2] = 1;
-                    sum++;
-                }
-                if (j > 0 && table[i][j-1] > 0) {
-                    directions[0] = 1;
-                    sum++;
-                }
-                // count adjacent adjacent-paths to find cornders
-                boolean isAdjacent = false;
-                for (int d = 0; d < 4; d++) {
-                    if (directions[d] == 1 && directions[(d+1) % 4] == 1) {
-                        isAdjacent = true;
-                    }
-                }
-                int x = i * 2;
-                int y = j * 2;
-                //displayGraph(nodeTable, x, y);
-                /*System.out.println("Node at " + x + ", " + y
-                + " with objs at directions: N:" + directions[0] + " E:" + directions[1] + " S:" + directions[2] + " W:" + directions[3]
-                 + " with " + table[i][j] + "type.");*/
-
-                // BEHOLD! THE EDGE ADDING STATEMENT OF DOOM
-
-                // adds nodes within 2x2 cell and to the next 2x2 cells to the bottom and right
-                if (nodeTable[x][y] > 0) {
-                    if (sum > 2) { // is junction
-                        graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x+1][y], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+1][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x][y], EDGE_STRAIGHT);
-                        if (directions[2] == 1) { // if south path solid
-                            graph.addUnidirectionalEdge(nodeTable[x][y+2], nodeTable[x][y+1], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x+1][y+2], EDGE_STRAIGHT);
-                        }
-                        if (directions[1] == 1) { // if north path solid
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+2][y], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x+2][y+1], nodeTable[x+1][y+1], EDGE_STRAIGHT);
-                        }
-                    }
-                    else if (isAdjacent) { // add corner edges
-                        if (directions[2] == 1 && directions[3] == 1) { // north and east empty
-                            graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x+1][y], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+1][y+1], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x+1][y+2], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x][y+2], nodeTable[x][y+1], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x][y], EDGE_UTURN);
-                            graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x+1][y+1], EDGE_UTURN);
-                            graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x][y+1], EDGE_UTURN);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x][y+1], EDGE_UTURN);
-                        } else if (directions[3] == 1 && directions[0] == 1) { // east and south empty
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+1][y+1], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x][y+1], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x+1][y], EDGE_UTURN);
-                            graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x][y+1], EDGE_UTURN);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x][y], EDGE_UTURN);
-                            graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x][y], EDGE_UTURN);
-                        } else if (directions[0] == 1 && directions[1] == 1) { // south and west empty
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x][y+1], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x][y], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+2][y], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x+2][y+1], nodeTable[x+1][y+1], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+1][y+1], EDGE_UTURN);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x][y], EDGE_UTURN);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x+1][y], EDGE_UTURN);
-                            graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x+1][y], EDGE_UTURN);
-                        } else if (directions[1] == 1 && directions[2] == 1) { // west and north empty
-                            graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x][y], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x+1][y], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+2][y], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x+2][y+1], nodeTable[x+1][y+1], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x][y+2], nodeTable[x][y+1], EDGE_STRAIGHT);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x][y+1], EDGE_UTURN);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x+1][y], EDGE_UTURN);
-                            graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x+1][y+1], EDGE_UTURN);
-                            graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+1][y+1], EDGE_UTURN);
-                        }
-                    } else if (directions[0] == 1 && sum == 2) { // vertical line
-                        graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x][y], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x][y+2], nodeTable[x][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+1][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x+1][y+2], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x+1][y], EDGE_UTURN);
-                        graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x+1][y+1], EDGE_UTURN);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x][y], EDGE_UTURN);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x][y+1], EDGE_UTURN);
-                    } else if (directions[1] == 1 && sum == 2) { // horizontal line
-                        graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x+1][y], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+2][y], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+2][y+1], nodeTable[x+1][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x][y+1], EDGE_UTURN);
-                        graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x][y], EDGE_UTURN);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x+1][y], EDGE_UTURN);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+1][y+1], EDGE_UTURN);
-                    } else if (directions[0] == 1) { // only connect north
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+1][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x][y], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x+1][y], EDGE_UTURN);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x][y], EDGE_UTURN);
-                    } else if (directions[1] == 1) { // only connection east
-                        graph.addUnidirectionalEdge(nodeTable[x+2][y+1], nodeTable[x+1][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x][y], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x+1][y], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+2][y], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x+1][y], EDGE_UTURN);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+1][y+1], EDGE_UTURN);
-                    } else if (directions[2] == 1) { // only conneciton south
-                        graph.addUnidirectionalEdge(nodeTable[x][y+2], nodeTable[x][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x][y], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x+1][y], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+1][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x+1][y+2], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x][y+1], EDGE_UTURN);
-                        graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x+1][y+1], EDGE_UTURN);
-                    } else if (directions[3] == 1) { // only connection west
-                        graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x+1][y], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y], nodeTable[x+1][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x+1][y+1], nodeTable[x][y+1], EDGE_STRAIGHT);
-                        graph.addUnidirectionalEdge(nodeTable[x][y], nodeTable[x][y+1], EDGE_UTURN);
-                        graph.addUnidirectionalEdge(nodeTable[x][y+1], nodeTable[x][y], EDGE_UTURN);
-                    }
-                }
-            }
-        }
+        // keep only the lanes every other lane can be reached from and return to
+        lanes.addTo(graph, nodeTable);
 
         return new GraphData(graph, nodeTable);
     }
@@ -468,7 +521,7 @@ public class GraphGenerator {
         for (int i = 0; i < graphData.getNodeTable().length; i++) {
             for (int j = 0; j < graphData.getNodeTable()[i].length; j++) {
                 if (graphData.getNodeTable()[i][j] == 0) {
-                    if (Math.random() < probability) {
+                    if (houseRandom.nextDouble() < probability) {
 
                         ArrayList<Integer> directions = new ArrayList<Integer>();
                         if (i > 0 && graphData.getNodeTable()[i-1][j] > 0 && graphData.graph.getNode(graphData.getNodeTable()[i-1][j]).getTileType() == NodeType.ROAD) {
@@ -483,7 +536,7 @@ public class GraphGenerator {
 
                         //System.out.println("Possible directions for house at " + i + ", " + j + ": " + directions.toString());
                         if (!directions.isEmpty()) {
-                            int direction = directions.get((int)(Math.random() * directions.size()));
+                            int direction = directions.get(houseRandom.nextInt(directions.size()));
                             // create house facing direction
                             graphData.nodeTable[i][j] = GenerateId(i, j, graphData.getNodeTable().length);
                             graphData.graph.addNode( new GraphNode<>(graphData.nodeTable[i][j], i, j, NodeType.HOUSE, new ArrayList<>(), new ArrayList<>(), () -> {}) );
@@ -522,6 +575,37 @@ public class GraphGenerator {
 
 
 
+    /**
+     * A growable list of the road cells a walk can restart from, so picking one takes a single draw.
+     */
+    private static class RoadCells {
+        private int[] xs = new int[64];
+        private int[] ys = new int[64];
+        private int size = 0;
+
+        void add(int x, int y) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int x(int cell) {
+            return xs[cell];
+        }
+
+        int y(int cell) {
+            return ys[cell];
+        }
+    }
+
     public class GraphData {
         public Graph<Integer> graph;
         public int[][] nodeTable;
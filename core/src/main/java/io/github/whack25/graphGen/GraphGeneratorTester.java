@@ -1,6 +1,11 @@
 package io.github.whack25.graphGen;
 
+import livegraph.Graph;
+
 public class GraphGeneratorTester {
+    private int generated = 0;
+    private int notConnected = 0;
+
     public void Test() {
         GraphGenerator generator = new GraphGenerator();
         generator.generate(20, 25, 0.4, 0.1);
@@ -14,10 +19,33 @@ public class GraphGeneratorTester {
 
     }
 
+    /**
+     * Generates a map from a seed, with and without tiles, and checks that every lane can reach every other.
+     */
+    public void TestConnected(long seed) {
+        for (int tileSize : new int[]{0, 16}) {
+            GraphGenerator generator = new GraphGenerator(seed);
+            generator.setPrintGraph(false);
+            generator.setTileSize(tileSize);
+            Graph<Integer> graph = generator.generate(40, 40, 0.35, 0.1);
+            generated++;
+            if (!graph.getStronglyConnectedComponents().isStronglyConnected()) {
+                notConnected++;
+                System.out.println("Map from seed " + seed + " with tile size " + tileSize + " is not strongly connected");
+            }
+        }
+    }
+
     public static void main(String[] args) {
         for (int i = 0; i < 1; i++) {
             GraphGeneratorTester tester = new GraphGeneratorTester();
             tester.Test();
         }
+
+        GraphGeneratorTester tester = new GraphGeneratorTester();
+        for (long seed = 1; seed <= 100; seed++) {
+            tester.TestConnected(seed);
+        }
+        System.out.println(tester.generated + " maps generated, " + tester.notConnected + " not strongly connected");
     }
 }
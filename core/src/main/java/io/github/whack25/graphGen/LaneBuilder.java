@@ -0,0 +1,210 @@
+package io.github.whack25.graphGen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import livegraph.ConnectedNode;
+import livegraph.Graph;
+import livegraph.GraphNode;
+import livegraph.NodeType;
+import livegraph.StronglyConnectedComponents;
+
+/**
+ * Expands a table of road cells into lanes and adds them to a graph. Each road cell becomes a 2x2 block of lane
+ * nodes, wired up by a pattern looked up from which of its four neighbours are roads: straight lanes through,
+ * corners, dead ends with a U-turn, or a roundabout at junctions. Nodes and edges are written into arrays sized
+ * exactly before they are filled, and only the largest strongly connected component of the lanes is added to the
+ * graph: lanes a robot could enter but never leave, or leave but never come back to, are left out.
+ */
+class LaneBuilder {
+    // bits of a cell's connection mask, set for each neighbour that is a road
+    static final int NORTH = 1; // y - 1
+    static final int EAST = 2; // x + 1
+    static final int SOUTH = 4; // y + 1
+    static final int WEST = 8; // x - 1
+
+    private static final String RING = "00>10 10>11 11>01 01>00 ";
+    private static final String SOUTH_LINK = "02>01 11>12 ";
+    private static final String EAST_LINK = "10>20 21>11 ";
+
+    /**
+     * The lane edges of a cell for each connection mask. Lanes are named by their offset from the cell's top left
+     * lane, so 00, 10, 01 and 11 are the cell's own lanes and 20, 21, 02 and 12 the nearest lanes of the cells to
+     * the east and south; edges to the north and west are added by those cells. &gt; is a straight edge and ~ a
+     * U-turn. The edges of each cell are added in the order given here.
+     */
+    private static final String[] PATTERNS = new String[16];
+    static {
+        PATTERNS[0] = "";
+        PATTERNS[NORTH] = "10>11 11>01 01>00 00~10 10~00";
+        PATTERNS[EAST] = "21>11 11>01 01>00 00>10 10>20 11~10 10~11";
+        PATTERNS[SOUTH] = "02>01 01>00 00>10 10>11 11>12 11~01 01~11";
+        PATTERNS[WEST] = "00>10 10>11 11>01 00~01 01~00";
+        PATTERNS[NORTH | SOUTH] = "01>00 02>01 10>11 11>12 00~10 01~11 10~00 11~01";
+        PATTERNS[EAST | WEST] = "00>10 10>20 11>01 21>11 00~01 01~00 11~10 10~11";
+        PATTERNS[NORTH | EAST] = "11>01 01>00 10>20 21>11 10~11 10~00 11~10 00~10";
+        PATTERNS[EAST | SOUTH] = "01>00 00>10 10>20 21>11 02>01 11~01 11~10 01~11 10~11";
+        PATTERNS[SOUTH | WEST] = "00>10 10>11 11>12 02>01 01~00 01~11 00~01 11~01";
+        PATTERNS[WEST | NORTH] = "10>11 11>01 00~10 00~01 10~00 01~00";
+        PATTERNS[NORTH | EAST | SOUTH] = RING + SOUTH_LINK + EAST_LINK;
+        PATTERNS[NORTH | EAST | WEST] = RING + EAST_LINK;
+        PATTERNS[NORTH | SOUTH | WEST] = RING + SOUTH_LINK;
+        PATTERNS[EAST | SOUTH | WEST] = RING + SOUTH_LINK + EAST_LINK;
+        PATTERNS[NORTH | EAST | SOUTH | WEST] = RING + SOUTH_LINK + EAST_LINK;
+    }
+
+    // each edge packed as from cell, from lane, to cell, to lane (2 bits each, cells as 0 self, 1 east, 2 south) and a U-turn bit
+    private static final int[][] EDGES_BY_MASK = new int[16][];
+    static {
+        for (int mask = 0; mask < 16; mask++) {
+            String[] edges = PATTERNS[mask].trim().isEmpty() ? new String[0] : PATTERNS[mask].trim().split(" ");
+            EDGES_BY_MASK[mask] = new int[edges.length];
+            for (int e = 0; e < edges.length; e++) {
+                String edge = edges[e];
+                EDGES_BY_MASK[mask][e] = packLane(edge.charAt(0) - '0', edge.charAt(1) - '0')
+                    | packLane(edge.charAt(3) - '0', edge.charAt(4) - '0') << 4
+                    | (edge.charAt(2) == '~' ? 1 << 8 : 0);
+            }
+        }
+    }
+
+    private static int packLane(int dx, int dy) {
+        int cell = dx == 2 ? 1 : dy == 2 ? 2 : 0;
+        return cell | (dx % 2 + 2 * (dy % 2)) << 2;
+    }
+
+    private final int laneWidth; // lanes across the whole map, twice the cells
+
+    // lane nodes, four per road cell in table order, each cell's in the order 00, 10, 01, 11
+    private final int nodeCount;
+    private final int[] xs;
+    private final int[] ys;
+    private final NodeType[] types;
+
+    // lane edges between node indices, in the order the cells add them
+    private final int edgeCount;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final int[] edgeWeights;
+
+    private int rejectedNodes = 0;
+
+    /**
+     * Expands every road cell of a table into lanes.
+     * @param table the cells, indexed [x][y], with a value above 0 for a road and above 2 for a track
+     * @param straightWeight the weight of an edge along a lane
+     * @param uTurnWeight the weight of an edge across to the other lane
+     */
+    LaneBuilder(int[][] table, int straightWeight, int uTurnWeight) {
+        int width = table.length;
+        int height = table[0].length;
+        laneWidth = width * 2;
+
+        // the first road cell's nodes, by cell at x * height + y, and the size of everything to come
+        int[] firstNode = new int[width * height];
+        byte[] masks = new byte[width * height];
+        int cells = 0;
+        int edges = 0;
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                if (table[i][j] > 0) {
+                    int mask = (j > 0 && table[i][j - 1] > 0 ? NORTH : 0)
+                        | (i < width - 1 && table[i + 1][j] > 0 ? EAST : 0)
+                        | (j < height - 1 && table[i][j + 1] > 0 ? SOUTH : 0)
+                        | (i > 0 && table[i - 1][j] > 0 ? WEST : 0);
+                    masks[i * height + j] = (byte) mask;
+                    firstNode[i * height + j] = cells * 4;
+                    cells++;
+                    edges += EDGES_BY_MASK[mask].length;
+                }
+            }
+        }
+
+        nodeCount = cells * 4;
+        xs = new int[nodeCount];
+        ys = new int[nodeCount];
+        types = new NodeType[nodeCount];
+        edgeCount = edges;
+        edgeFrom = new int[edgeCount];
+        edgeTo = new int[edgeCount];
+        edgeWeights = new int[edgeCount];
+
+        int node = 0;
+        int edge = 0;
+        int[] cellNodes = new int[3]; // first node of this cell and the cells to the east and south
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                if (table[i][j] <= 0) {
+                    continue;
+                }
+                NodeType type = table[i][j] > 2 ? NodeType.TRACK : NodeType.ROAD;
+                for (int lane = 0; lane < 4; lane++) {
+                    xs[node] = 2 * i + lane % 2;
+                    ys[node] = 2 * j + lane / 2;
+                    types[node] = type;
+                    node++;
+                }
+                int mask = masks[i * height + j];
+                cellNodes[0] = firstNode[i * height + j];
+                cellNodes[1] = (mask & EAST) != 0 ? firstNode[(i + 1) * height + j] : -1;
+                cellNodes[2] = (mask & SOUTH) != 0 ? firstNode[i * height + j + 1] : -1;
+                for (int packed : EDGES_BY_MASK[mask]) {
+                    edgeFrom[edge] = cellNodes[packed & 3] + (packed >> 2 & 3);
+                    edgeTo[edge] = cellNodes[packed >> 4 & 3] + (packed >> 6 & 3);
+                    edgeWeights[edge] = (packed & 1 << 8) != 0 ? uTurnWeight : straightWeight;
+                    edge++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the nodes and edges of the largest strongly connected component to a graph, in the order they were
+     * expanded, and records the ID of each node added in the node table.
+     * @param graph the graph to add to
+     * @param nodeTable the ID of the node at each lane position, filled in for the nodes added
+     */
+    void addTo(Graph<Integer> graph, int[][] nodeTable) {
+        int[] offsets = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[edgeFrom[e] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] targets = new int[edgeCount];
+        int[] fill = Arrays.copyOf(offsets, nodeCount);
+        for (int e = 0; e < edgeCount; e++) {
+            targets[fill[edgeFrom[e]]++] = edgeTo[e];
+        }
+        StronglyConnectedComponents components = StronglyConnectedComponents.of(nodeCount, offsets, targets);
+        int kept = components.getLargestComponent();
+
+        @SuppressWarnings("unchecked")
+        GraphNode<Integer, Integer>[] nodes = (GraphNode<Integer, Integer>[]) new GraphNode<?, ?>[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            if (components.getComponent(i) == kept) {
+                int id = xs[i] + ys[i] * laneWidth + 1; // see GraphGenerator.GenerateId
+                nodes[i] = new GraphNode<>(id, xs[i], ys[i], types[i], new ArrayList<>(offsets[i + 1] - offsets[i]), new ArrayList<>(0), () -> {});
+                graph.addNode(nodes[i]);
+                nodeTable[xs[i]][ys[i]] = id;
+            } else {
+                rejectedNodes++;
+            }
+        }
+        for (int e = 0; e < edgeCount; e++) {
+            GraphNode<Integer, Integer> from = nodes[edgeFrom[e]];
+            GraphNode<Integer, Integer> to = nodes[edgeTo[e]];
+            if (from != null && to != null) {
+                from.addNeighbour(new ConnectedNode<>(to, edgeWeights[e]));
+            }
+        }
+    }
+
+    /**
+     * @return the number of nodes left out of the graph for not being in the largest strongly connected component
+     */
+    int getRejectedNodes() {
+        return rejectedNodes;
+    }
+}
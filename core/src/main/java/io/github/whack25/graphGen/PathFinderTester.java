@@ -0,0 +1,162 @@
+package io.github.whack25.graphGen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+import livegraph.DistanceOracle;
+import livegraph.Graph;
+import livegraph.GraphNode;
+import livegraph.GraphTopology;
+import livegraph.NodeType;
+import livegraph.PathFinder;
+import livegraph.SearchMode;
+
+/**
+ * Checks that every search mode picks a next hop on a cheapest path. Generated maps are ticked for a while so
+ * that congestion and blockages make the costs uneven, then for random pairs of nodes the next hop from each mode
+ * is compared against distances from a plain reverse Dijkstra to the destination. Before ticking, the base costs
+ * between houses from a distance oracle are compared against the same Dijkstra on the empty map.
+ */
+public class PathFinderTester {
+    private static final int PAIRS_PER_MAP = 500;
+
+    private int checked = 0;
+    private int failed = 0;
+    private int distancesChecked = 0;
+    private int distancesFailed = 0;
+    private final long[] searchNanos = new long[SearchMode.values().length];
+
+    public void Test(long seed) {
+        GraphGenerator generator = new GraphGenerator(seed);
+        generator.setPrintGraph(false);
+        Graph<Integer> graph = generator.generate(30, 30, 0.35, 0.1);
+        SplittableRandom random = new SplittableRandom(seed);
+        DistanceOracle oracle = graph.buildDistanceOracle(8);
+        System.out.println("Distance oracle for seed " + seed + ": " + oracle);
+        checkBaseDistances(graph, oracle);
+
+        for (int tick = 0; tick < 300; tick++) {
+            if (tick % 10 == 0) {
+                GraphNode<Integer, Integer> node = graph.getNodeByIndex(random.nextInt(graph.getNodeCount()));
+                graph.toggleNodeEnabled(node.getX(), node.getY());
+            }
+            graph.tick();
+        }
+
+        for (int pair = 0; pair < PAIRS_PER_MAP; pair++) {
+            GraphNode<Integer, Integer> from = graph.getNodeByIndex(random.nextInt(graph.getNodeCount()));
+            GraphNode<Integer, Integer> to = graph.getNodeByIndex(random.nextInt(graph.getNodeCount()));
+            if (from == to) {
+                continue;
+            }
+            int[] distances = distancesTo(graph, to.getIndex());
+            for (SearchMode mode : SearchMode.values()) {
+                graph.setSearchMode(mode);
+                long start = System.nanoTime();
+                GraphNode<Integer, Integer> next = from.getNextNodeOnPath(to.getNodeId());
+                searchNanos[mode.ordinal()] += System.nanoTime() - start;
+                checked++;
+                if (!isOnCheapestPath(graph, from, next, distances)) {
+                    failed++;
+                    System.out.println(mode + " from " + from.getNodeId() + " to " + to.getNodeId() + " went to "
+                        + (next == null ? "nowhere" : next.getNodeId()) + ", cheapest cost " + distances[from.getIndex()]);
+                }
+            }
+        }
+    }
+
+    private void checkBaseDistances(Graph<Integer> graph, DistanceOracle oracle) {
+        List<GraphNode<Integer, Integer>> houses = new ArrayList<>();
+        for (int i = 0; i < graph.getNodeCount(); i++) {
+            if (graph.getNodeByIndex(i).getTileType() == NodeType.HOUSE) {
+                houses.add(graph.getNodeByIndex(i));
+            }
+        }
+        for (GraphNode<Integer, Integer> to : houses) {
+            int[] distances = distancesTo(graph, to.getIndex());
+            for (GraphNode<Integer, Integer> from : houses) {
+                distancesChecked++;
+                if (oracle.getBaseDistance(from, to) != distances[from.getIndex()]) {
+                    distancesFailed++;
+                    System.out.println("Oracle has " + oracle.getBaseDistance(from, to) + " from " + from.getNodeId()
+                        + " to " + to.getNodeId() + ", cheapest cost " + distances[from.getIndex()]);
+                }
+            }
+        }
+    }
+
+    private static boolean isOnCheapestPath(Graph<Integer> graph, GraphNode<Integer, Integer> from,
+                                            GraphNode<Integer, Integer> next, int[] distances) {
+        int cheapest = distances[from.getIndex()];
+        if (next == null) {
+            return cheapest == Integer.MAX_VALUE;
+        }
+        if (cheapest == Integer.MAX_VALUE || next.isBlocked() || distances[next.getIndex()] == Integer.MAX_VALUE) {
+            return false;
+        }
+        int weight = graph.getTopology().getEdgeWeight(from.getIndex(), next.getIndex());
+        return weight >= 0 && PathFinder.edgeCost(weight, next) + distances[next.getIndex()] == cheapest;
+    }
+
+    /**
+     * Gets the cost of the cheapest path from every node to a destination, with a textbook reverse Dijkstra
+     * kept independent of the path finder's own.
+     */
+    private static int[] distancesTo(Graph<Integer> graph, int destination) {
+        int nodeCount = graph.getNodeCount();
+        GraphTopology topology = graph.getTopology();
+        int[] offsets = topology.getOffsets();
+        int[] targets = topology.getTargets();
+        int[] weights = topology.getWeights();
+        List<List<int[]>> incoming = new ArrayList<>(); // {from, weight} for each edge into a node
+        for (int i = 0; i < nodeCount; i++) {
+            incoming.add(new ArrayList<>());
+        }
+        for (int from = 0; from < nodeCount; from++) {
+            for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+                incoming.get(targets[e]).add(new int[]{from, weights[e]});
+            }
+        }
+
+        int[] distances = new int[nodeCount];
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        distances[destination] = 0;
+        PriorityQueue<int[]> queue = new PriorityQueue<>(Comparator.comparingInt((int[] entry) -> entry[1]));
+        queue.add(new int[]{destination, 0});
+        while (!queue.isEmpty()) {
+            int[] entry = queue.poll();
+            int current = entry[0];
+            if (entry[1] > distances[current]) {
+                continue;
+            }
+            GraphNode<Integer, Integer> node = graph.getNodeByIndex(current);
+            if (node.isBlocked()) {
+                continue; // can be left but not entered, so no path passes through it
+            }
+            for (int[] edge : incoming.get(current)) {
+                int distance = distances[current] + PathFinder.edgeCost(edge[1], node);
+                if (distance < distances[edge[0]]) {
+                    distances[edge[0]] = distance;
+                    queue.add(new int[]{edge[0], distance});
+                }
+            }
+        }
+        return distances;
+    }
+
+    public static void main(String[] args) {
+        PathFinderTester tester = new PathFinderTester();
+        for (long seed = 1; seed <= 3; seed++) {
+            tester.Test(seed);
+        }
+        System.out.println(tester.distancesChecked + " base distances between houses checked, " + tester.distancesFailed + " wrong");
+        System.out.println(tester.checked + " next hops checked, " + tester.failed + " not on a cheapest path");
+        for (SearchMode mode : SearchMode.values()) {
+            System.out.printf("%s: %.1f us per search%n", mode, tester.searchNanos[mode.ordinal()] / 1000.0 / (tester.checked / SearchMode.values().length));
+        }
+    }
+}
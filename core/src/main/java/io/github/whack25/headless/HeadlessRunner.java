@@ -0,0 +1,325 @@
+package io.github.whack25.headless;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongToDoubleFunction;
+
+import io.github.whack25.graphGen.GraphGenerator;
+import livegraph.DemandModel;
+import livegraph.Graph;
+import livegraph.IncidentScheduler;
+import livegraph.NodeType;
+import livegraph.TickMetrics;
+
+/**
+ * Runs the simulation without a window, either as fast as possible or at a target tick rate,
+ * and reports throughput and robot statistics. Used for capacity testing and soak runs.
+ */
+public class HeadlessRunner {
+    private int width = 30;
+    private int height = 30;
+    private double coverageGoal = 0.35;
+    private double houseProbability = 0.1;
+    private int tileSize = 0; // tiles the map's roads are grown in, 0 for none
+    private long ticks = 10000;
+    private double targetTicksPerSecond = 0; // 0 runs as fast as possible
+    private long progressInterval = 0; // print progress every this many ticks, 0 for never
+    private Long seed = null; // seed for the map and the simulation, null for a random run
+    private int threads = 1; // threads the tick's decide phase runs on
+    private boolean eventDrivenTicks = true; // whether only nodes with something to do decide each tick
+    private double roadIncidentRate = IncidentScheduler.DEFAULT_ROAD_RATE; // chance of each road being blocked on a tick
+    private double spawnRate = -1; // robots starting trips per tick, below 0 for the default per house
+    private LongToDoubleFunction demandProfile = null; // multiplier of the spawn rate on each tick, null for flat
+    private String metricsCsv = null; // file to write per tick metrics to, null for none
+
+    private long robotsSpawned = 0;
+    private long robotsHome = 0;
+
+    /**
+     * Generates a map and runs the configured number of ticks on it.
+     * @return the report for the run
+     */
+    public RunReport run() {
+        robotsSpawned = 0;
+        robotsHome = 0;
+        Graph<Integer> graph = generateGraph();
+        graph.setTickThreads(threads);
+        graph.setEventDrivenTicks(eventDrivenTicks);
+        graph.getIncidents().setRate(NodeType.ROAD, roadIncidentRate);
+        if (spawnRate >= 0) {
+            graph.getDemand().setSpawnRate(spawnRate);
+        }
+        graph.getDemand().setProfile(demandProfile);
+        graph.setOnRobotSpawn(() -> robotsSpawned++);
+        graph.setOnRobotFinish(() -> robotsHome++);
+
+        long elapsed;
+        try (PrintWriter metrics = metricsCsv == null ? null : new PrintWriter(new FileWriter(metricsCsv))) {
+            if (metrics != null) {
+                graph.setMetricsEnabled(true);
+                metrics.println(TickMetrics.CSV_HEADER);
+            }
+            elapsed = runTicks(graph, metrics);
+            if (metrics != null && metrics.checkError()) {
+                throw new IOException("Failed to write the metrics to " + metricsCsv);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            graph.setTickThreads(1); // shuts the tick pool down
+        }
+
+        return new RunReport(graph.getGridWidth(), graph.getGridHeight(), graph.getNodeCount(), threads, ticks, elapsed,
+            robotsSpawned, robotsHome, graph.getMeanTripTicks(), graph.getIncidents().getIncidentCount());
+    }
+
+    /**
+     * Runs the configured number of ticks on a graph.
+     * @param graph the graph to tick
+     * @param metrics where to write each tick's metrics, or null to not write them
+     * @return the time taken in nanoseconds
+     */
+    private long runTicks(Graph<Integer> graph, PrintWriter metrics) {
+        long periodNanos = targetTicksPerSecond > 0 ? (long) (1_000_000_000L / targetTicksPerSecond) : 0;
+        long start = System.nanoTime();
+        long nextTick = start;
+        for (long tick = 1; tick <= ticks; tick++) {
+            if (periodNanos > 0) {
+                nextTick += periodNanos;
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            graph.tick();
+            if (metrics != null) {
+                metrics.println(graph.getLastTickMetrics().toCsvRow());
+            }
+            if (progressInterval > 0 && tick % progressInterval == 0) {
+                System.out.println("tick " + tick + ": " + robotsSpawned + " spawned, " + robotsHome + " home");
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Runs the same map and seed once for each thread count, to measure how the tick scales.
+     * Without a seed, one is picked for all the runs.
+     * @param threadCounts the thread counts to run with
+     * @return the report for each run, in the order given
+     */
+    public List<RunReport> runScaling(int[] threadCounts) {
+        Long originalSeed = seed;
+        int originalThreads = threads;
+        if (seed == null) {
+            seed = new SplittableRandom().nextLong();
+        }
+        List<RunReport> reports = new ArrayList<>();
+        try {
+            for (int threadCount : threadCounts) {
+                threads = threadCount;
+                reports.add(run());
+            }
+        } finally {
+            seed = originalSeed;
+            threads = originalThreads;
+        }
+        return reports;
+    }
+
+    /**
+     * Formats a scaling run as a table of throughput and speedup against the first run, checking that every run
+     * ended in the same state as the first.
+     * @param reports the reports from {@link #runScaling(int[])}
+     * @return the table
+     */
+    public static String formatScaling(List<RunReport> reports) {
+        StringBuilder table = new StringBuilder(String.format("%8s %12s %8s %s%n", "threads", "ticks/s", "speedup", "same result"));
+        RunReport base = reports.get(0);
+        for (RunReport report : reports) {
+            boolean same = report.robotsSpawned == base.robotsSpawned && report.robotsHome == base.robotsHome
+                && report.meanTripTicks == base.meanTripTicks && report.incidents == base.incidents;
+            table.append(String.format("%8d %12.1f %7.2fx %s%n", report.threads, report.getTicksPerSecond(),
+                report.getTicksPerSecond() / base.getTicksPerSecond(), same ? "yes" : "NO"));
+        }
+        return table.toString();
+    }
+
+    /**
+     * Parses a demand profile given as ticks per step, a colon and comma separated multipliers, such as 500:1,3,1,2.
+     */
+    private static LongToDoubleFunction parseProfile(String value) {
+        int colon = value.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected ticksPerStep:multiplier,... but got " + value);
+        }
+        return DemandModel.cyclicProfile(Integer.parseInt(value.substring(0, colon)),
+            Arrays.stream(value.substring(colon + 1).split(",")).mapToDouble(Double::parseDouble).toArray());
+    }
+
+    private Graph<Integer> generateGraph() {
+        GraphGenerator generator = seed == null ? new GraphGenerator() : new GraphGenerator(seed);
+        generator.setPrintGraph(false);
+        generator.setTileSize(tileSize);
+        return generator.generate(width, height, coverageGoal, houseProbability);
+    }
+
+    // Setters
+
+    /**
+     * Sets the size of the generator grid. The cell graph is double this in each direction.
+     */
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public void setCoverageGoal(double coverageGoal) {
+        this.coverageGoal = coverageGoal;
+    }
+
+    public void setHouseProbability(double houseProbability) {
+        this.houseProbability = houseProbability;
+    }
+
+    /**
+     * Sets the size of the tiles the map's roads are grown in on several threads, for very large maps.
+     * @param tileSize the tile size in generator cells, or 0 to grow the roads from the centre
+     */
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    public void setTicks(long ticks) {
+        this.ticks = ticks;
+    }
+
+    /**
+     * Sets the tick rate to run at.
+     * @param targetTicksPerSecond ticks per second, or 0 to run as fast as possible
+     */
+    public void setTargetTicksPerSecond(double targetTicksPerSecond) {
+        this.targetTicksPerSecond = targetTicksPerSecond;
+    }
+
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Sets the seed for the map and simulation, so that runs with the same seed and settings are identical.
+     * @param seed the seed, or null for a random run
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets how many threads the decide phase of each tick runs on.
+     * @param threads the number of threads, 1 to tick on the calling thread
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Sets whether ticks are event driven, so that idle nodes sleep, or every node decides every tick.
+     * Both give the same result.
+     * @param eventDrivenTicks whether ticks are event driven
+     */
+    public void setEventDrivenTicks(boolean eventDrivenTicks) {
+        this.eventDrivenTicks = eventDrivenTicks;
+    }
+
+    /**
+     * Sets the chance of each road being blocked by a random incident on any tick.
+     * @param roadIncidentRate the chance per road and tick, 0 for no incidents
+     */
+    public void setRoadIncidentRate(double roadIncidentRate) {
+        this.roadIncidentRate = roadIncidentRate;
+    }
+
+    /**
+     * Sets the mean number of robots starting trips on each tick, to load the map at a known arrival rate.
+     * @param spawnRate robots per tick, or below 0 for the default rate per house
+     */
+    public void setSpawnRate(double spawnRate) {
+        this.spawnRate = spawnRate;
+    }
+
+    /**
+     * Sets how the spawn rate varies over time.
+     * @param demandProfile the multiplier of the spawn rate on each tick, or null for a flat rate
+     * @see DemandModel#cyclicProfile(int, double...)
+     */
+    public void setDemandProfile(LongToDoubleFunction demandProfile) {
+        this.demandProfile = demandProfile;
+    }
+
+    /**
+     * Sets a file to write the metrics of every tick to, as CSV with a header row. Measuring adds a little overhead
+     * to each tick, so leave this unset when comparing throughput.
+     * @param metricsCsv the file path, or null to not measure ticks
+     */
+    public void setMetricsCsv(String metricsCsv) {
+        this.metricsCsv = metricsCsv;
+    }
+
+    /**
+     * Runs headlessly. Options are given as --name=value:
+     * --width, --height, --coverage, --houses, --tile (generation tile size), --ticks, --rate (ticks per second, 0 for unlimited), --progress, --seed,
+     * --threads, --events (false to decide every node every tick), --incidents (chance of each road being blocked on a tick),
+     * --spawns (robots starting trips per tick), --profile (ticks per step then a colon and comma separated multipliers of the spawn rate, repeating), --metrics (a CSV file to write per tick metrics to), and --scaling (comma separated thread counts to compare on the same map and seed).
+     */
+    public static void main(String[] args) {
+        HeadlessRunner runner = new HeadlessRunner();
+        int[] scaling = null;
+        int width = runner.width;
+        int height = runner.height;
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (!arg.startsWith("--") || split < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            String name = arg.substring(2, split);
+            String value = arg.substring(split + 1);
+            switch (name) {
+                case "width": width = Integer.parseInt(value); break;
+                case "height": height = Integer.parseInt(value); break;
+                case "coverage": runner.setCoverageGoal(Double.parseDouble(value)); break;
+                case "houses": runner.setHouseProbability(Double.parseDouble(value)); break;
+                case "tile": runner.setTileSize(Integer.parseInt(value)); break;
+                case "ticks": runner.setTicks(Long.parseLong(value)); break;
+                case "rate": runner.setTargetTicksPerSecond(Double.parseDouble(value)); break;
+                case "progress": runner.setProgressInterval(Long.parseLong(value)); break;
+                case "seed": runner.setSeed(Long.parseLong(value)); break;
+                case "threads": runner.setThreads(Integer.parseInt(value)); break;
+                case "events": runner.setEventDrivenTicks(Boolean.parseBoolean(value)); break;
+                case "incidents": runner.setRoadIncidentRate(Double.parseDouble(value)); break;
+                case "spawns": runner.setSpawnRate(Double.parseDouble(value)); break;
+                case "profile": runner.setDemandProfile(parseProfile(value)); break;
+                case "metrics": runner.setMetricsCsv(value); break;
+                case "scaling": scaling = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                default: throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+        runner.setSize(width, height);
+
+        if (scaling != null) {
+            List<RunReport> reports = runner.runScaling(scaling);
+            for (RunReport report : reports) {
+                System.out.println(report);
+            }
+            System.out.print(formatScaling(reports));
+        } else {
+            System.out.println(runner.run());
+        }
+    }
+}
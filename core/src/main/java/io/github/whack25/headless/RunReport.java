@@ -0,0 +1,41 @@
+package io.github.whack25.headless;
+
+/**
+ * The results of a headless simulation run.
+ */
+public class RunReport {
+    public final int gridWidth;
+    public final int gridHeight;
+    public final int nodeCount;
+    public final int threads;
+    public final long ticks;
+    public final long elapsedNanos;
+    public final long robotsSpawned;
+    public final long robotsHome;
+    public final double meanTripTicks;
+    public final long incidents; // nodes blocked by random incidents
+
+    public RunReport(int gridWidth, int gridHeight, int nodeCount, int threads, long ticks, long elapsedNanos,
+                     long robotsSpawned, long robotsHome, double meanTripTicks, long incidents) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.nodeCount = nodeCount;
+        this.threads = threads;
+        this.ticks = ticks;
+        this.elapsedNanos = elapsedNanos;
+        this.robotsSpawned = robotsSpawned;
+        this.robotsHome = robotsHome;
+        this.meanTripTicks = meanTripTicks;
+        this.incidents = incidents;
+    }
+
+    public double getTicksPerSecond() {
+        return elapsedNanos == 0 ? 0 : ticks / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%dx%d cells, %d nodes, %d threads: %d ticks in %.2fs (%.1f ticks/s), %d robots spawned, %d home, mean trip %.1f ticks, %d incidents",
+            gridWidth, gridHeight, nodeCount, threads, ticks, elapsedNanos / 1e9, getTicksPerSecond(), robotsSpawned, robotsHome, meanTripTicks, incidents);
+    }
+}
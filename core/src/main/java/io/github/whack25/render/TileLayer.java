@@ -0,0 +1,134 @@
+package io.github.whack25.render;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.utils.Disposable;
+
+import io.github.whack25.simulation.SimulationSnapshot;
+import livegraph.Graph;
+import livegraph.GraphNode;
+import livegraph.NodeType;
+
+/**
+ * The map's tiles, baked into a {@link SpriteCache} in square chunks so that a frame draws each visible chunk with
+ * one call rather than one sprite per tile, and skips chunks outside the camera. The only tile that changes is a
+ * road being blocked or unblocked, so a chunk is only rebuilt when a visible tile's blocked state differs from
+ * what it was baked with.
+ */
+public class TileLayer implements Disposable {
+    private static final int CHUNK_SIZE = 16; // cells along each side of a chunk
+
+    private final Graph<Integer> graph;
+    private final Texture houseTexture;
+    private final Texture roadTexture;
+    private final Texture roadBlockedTexture;
+    private final Texture grassTexture;
+    private final SpriteCache cache;
+    private final int chunksX;
+    private final int chunksY;
+    private final int[][] chunkNodes; // node indices in each chunk, at cx + cy * chunksX
+    private final int[] chunkCacheIds; // cache of each chunk, -1 if the chunk has no tiles
+    private final boolean[] bakedBlocked; // blocked state each tile was last baked with, by node index
+
+    public TileLayer(Graph<Integer> graph, Texture houseTexture, Texture roadTexture, Texture roadBlockedTexture, Texture grassTexture) {
+        this.graph = graph;
+        this.houseTexture = houseTexture;
+        this.roadTexture = roadTexture;
+        this.roadBlockedTexture = roadBlockedTexture;
+        this.grassTexture = grassTexture;
+        this.chunksX = (graph.getGridWidth() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunksY = (graph.getGridHeight() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunkNodes = new int[chunksX * chunksY][];
+        this.chunkCacheIds = new int[chunksX * chunksY];
+        this.bakedBlocked = new boolean[graph.getNodeCount()];
+        this.cache = new SpriteCache(Math.max(1, graph.getNodeCount()), false);
+
+        for (int cy = 0; cy < chunksY; cy++) {
+            for (int cx = 0; cx < chunksX; cx++) {
+                int chunk = cx + cy * chunksX;
+                chunkNodes[chunk] = graph.getNodesInRegion(cx * CHUNK_SIZE, cy * CHUNK_SIZE, (cx + 1) * CHUNK_SIZE - 1, (cy + 1) * CHUNK_SIZE - 1)
+                    .stream().mapToInt(GraphNode::getIndex).toArray();
+                chunkCacheIds[chunk] = -1;
+                if (chunkNodes[chunk].length > 0) {
+                    cache.beginCache();
+                    addTiles(chunk);
+                    chunkCacheIds[chunk] = cache.endCache();
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the tiles the camera can see, first rebuilding any visible chunk whose tiles have changed.
+     * @param camera the camera to draw with
+     * @param snapshot the snapshot to take blocked states from
+     */
+    public void draw(Camera camera, SimulationSnapshot snapshot) {
+        VisibleRegion region = VisibleRegion.of(camera);
+        int minCx = Math.max(0, Math.floorDiv(region.minX, CHUNK_SIZE));
+        int minCy = Math.max(0, Math.floorDiv(region.minY, CHUNK_SIZE));
+        int maxCx = Math.min(chunksX - 1, Math.floorDiv(region.maxX, CHUNK_SIZE));
+        int maxCy = Math.min(chunksY - 1, Math.floorDiv(region.maxY, CHUNK_SIZE));
+
+        // rebuilding must happen outside begin and end
+        for (int cy = minCy; cy <= maxCy; cy++) {
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                int chunk = cx + cy * chunksX;
+                if (chunkCacheIds[chunk] >= 0 && isStale(chunk, snapshot)) {
+                    cache.beginCache(chunkCacheIds[chunk]);
+                    addTiles(chunk);
+                    cache.endCache();
+                }
+            }
+        }
+
+        Gdx.gl.glEnable(GL20.GL_BLEND);
+        Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
+        cache.setProjectionMatrix(camera.combined);
+        cache.begin();
+        for (int cy = minCy; cy <= maxCy; cy++) {
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                int chunk = cx + cy * chunksX;
+                if (chunkCacheIds[chunk] >= 0) {
+                    cache.draw(chunkCacheIds[chunk]);
+                }
+            }
+        }
+        cache.end();
+    }
+
+    private boolean isStale(int chunk, SimulationSnapshot snapshot) {
+        boolean stale = false;
+        for (int index : chunkNodes[chunk]) {
+            if (index < snapshot.getNodeCount() && snapshot.isBlocked(index) != bakedBlocked[index]) {
+                bakedBlocked[index] = snapshot.isBlocked(index);
+                stale = true;
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * Adds a sprite for every tile in a chunk to the cache being defined. Always adds the same number of sprites
+     * for a chunk, so its cache can be redefined in place.
+     */
+    private void addTiles(int chunk) {
+        for (int index : chunkNodes[chunk]) {
+            GraphNode<Integer, Integer> node = graph.getNodeByIndex(index);
+            cache.add(node.getTileType() == NodeType.HOUSE ? houseTexture :
+                      bakedBlocked[index] ? roadBlockedTexture :
+                      node.getTileType() == NodeType.ROAD ? roadTexture :
+                      grassTexture,
+                node.getX(), node.getY(), 1, 1, 0, 1, 1, 0, Color.WHITE_FLOAT_BITS); // whole texture over one cell, as SpriteBatch.draw
+        }
+    }
+
+    @Override
+    public void dispose() {
+        cache.dispose();
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.whack25.render;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+
+/**
+ * The block of grid cells a camera can see, for culling anything drawn outside it.
+ */
+public final class VisibleRegion {
+    public final int minX;
+    public final int minY;
+    public final int maxX;
+    public final int maxY;
+
+    public VisibleRegion(int minX, int minY, int maxX, int maxY) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Gets the cells an orthographic camera can see, including any it can partly see.
+     * @param camera the camera, in world units of one cell
+     * @return the visible region
+     */
+    public static VisibleRegion of(Camera camera) {
+        float zoom = camera instanceof OrthographicCamera ? ((OrthographicCamera) camera).zoom : 1;
+        float halfWidth = camera.viewportWidth * zoom / 2;
+        float halfHeight = camera.viewportHeight * zoom / 2;
+        return new VisibleRegion(
+            (int) Math.floor(camera.position.x - halfWidth),
+            (int) Math.floor(camera.position.y - halfHeight),
+            (int) Math.floor(camera.position.x + halfWidth),
+            (int) Math.floor(camera.position.y + halfHeight));
+    }
+
+    /**
+     * Gets this region grown by a number of cells on every side.
+     * @param cells the number of cells to grow by
+     * @return the grown region
+     */
+    public VisibleRegion grow(int cells) {
+        return new VisibleRegion(minX - cells, minY - cells, maxX + cells, maxY + cells);
+    }
+}
@@ -0,0 +1,201 @@
+package io.github.whack25.simulation;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import livegraph.Graph;
+
+/**
+ * Runs a graph on a fixed timestep, independently of the frame rate. Elapsed real time, scaled by the speed,
+ * is added to an accumulator and a tick is run for every tick period it holds. At most maxStepsPerAdvance ticks
+ * run per call; when the simulation cannot keep up, the backlog is dropped so it slows down instead of freezing
+ * the caller.
+ *
+ * The loop either runs inline, with the renderer calling {@link #advance(long)} every frame, or on its own thread
+ * after {@link #start()}. Either way the renderer reads the latest {@link SimulationSnapshot} and changes the
+ * graph only through {@link #submit(Runnable)}, so the graph is only ever touched by the thread that ticks it.
+ */
+public class SimulationLoop {
+    public static final double BASE_TICKS_PER_SECOND = 60; // ticks per second at 1x, one tick per frame at 60 fps
+    private static final long SNAPSHOT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1) / 120; // snapshots from the simulation thread, at most
+
+    private final Graph<Integer> graph;
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>(); // changes to make before the next tick
+    private volatile double speed = 1; // multiple of BASE_TICKS_PER_SECOND to run at
+    private volatile boolean paused = false;
+    private int maxStepsPerAdvance = 1000;
+    private long maxAdvanceNanos = TimeUnit.MILLISECONDS.toNanos(50); // time budget for ticks in one call, 0 for none
+    private double accumulatorNanos = 0; // simulated time not yet ticked
+
+    private volatile long robotsSpawned = 0;
+    private volatile long robotsHome = 0;
+    private volatile SimulationSnapshot snapshot;
+    private long lastSnapshotNanos = 0;
+
+    private Thread thread; // the simulation thread, null when running inline
+    private volatile boolean running = false;
+
+    public SimulationLoop(Graph<Integer> graph) {
+        this.graph = graph;
+        graph.setOnRobotSpawn(() -> robotsSpawned++);
+        graph.setOnRobotFinish(() -> robotsHome++);
+        snapshot = SimulationSnapshot.capture(graph, 0, 0);
+    }
+
+    /**
+     * Runs pending commands, then as many ticks as the elapsed time calls for at the current speed, and publishes
+     * a snapshot. Call this every frame when running inline; the simulation thread calls it itself.
+     * @param elapsedNanos the real time since the last call
+     * @return the number of ticks run
+     */
+    public int advance(long elapsedNanos) {
+        boolean changed = runCommands();
+        long periodNanos = getTickPeriodNanos();
+        if (!paused) {
+            accumulatorNanos += elapsedNanos;
+        }
+
+        long start = System.nanoTime();
+        int steps = 0;
+        while (accumulatorNanos >= periodNanos) {
+            if (steps == maxStepsPerAdvance || (maxAdvanceNanos > 0 && System.nanoTime() - start > maxAdvanceNanos)) {
+                accumulatorNanos = 0; // cannot keep up, drop the backlog rather than fall further behind
+                break;
+            }
+            graph.tick();
+            accumulatorNanos -= periodNanos;
+            steps++;
+        }
+
+        if (steps > 0 || changed) {
+            long now = System.nanoTime();
+            if (thread == null || now - lastSnapshotNanos >= SNAPSHOT_INTERVAL_NANOS) {
+                snapshot = SimulationSnapshot.capture(graph, robotsSpawned, robotsHome);
+                lastSnapshotNanos = now;
+            }
+        }
+        return steps;
+    }
+
+    private boolean runCommands() {
+        boolean ran = false;
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            command.run();
+            ran = true;
+        }
+        return ran;
+    }
+
+    /**
+     * Starts ticking on a separate daemon thread. The caller must no longer call {@link #advance(long)}.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::runThread, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the simulation thread, waiting for the current tick to finish.
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    private void runThread() {
+        long last = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            advance(now - last);
+            last = now;
+            // sleep until the next tick is due, waking regularly to pick up commands and speed changes
+            long wait = paused ? TimeUnit.MILLISECONDS.toNanos(5) : (long) (getTickPeriodNanos() - accumulatorNanos);
+            if (wait > 0) {
+                LockSupport.parkNanos(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(5)));
+            }
+        }
+    }
+
+    /**
+     * Queues a change to the graph, such as toggling a node, to run on the simulation thread before the next tick.
+     * @param command the change to make
+     */
+    public void submit(Runnable command) {
+        commands.add(command);
+    }
+
+    private long getTickPeriodNanos() {
+        return Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / (BASE_TICKS_PER_SECOND * speed)));
+    }
+
+    /**
+     * Gets the latest snapshot of the simulation, safe to read on any thread.
+     * @return the snapshot
+     */
+    public SimulationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public boolean isRunningOnThread() {
+        return thread != null;
+    }
+
+    /**
+     * Sets the simulation speed as a multiple of {@link #BASE_TICKS_PER_SECOND}, e.g. 1, 10 or 100.
+     * @param speed the speed multiplier
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive");
+        }
+        this.speed = speed;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Sets the most ticks one call to {@link #advance(long)} may run before the backlog is dropped.
+     * @param maxStepsPerAdvance the step cap
+     */
+    public void setMaxStepsPerAdvance(int maxStepsPerAdvance) {
+        if (maxStepsPerAdvance < 1) {
+            throw new IllegalArgumentException("At least one step must be allowed per advance");
+        }
+        this.maxStepsPerAdvance = maxStepsPerAdvance;
+    }
+
+    /**
+     * Sets how long one call to {@link #advance(long)} may spend ticking before the backlog is dropped,
+     * so an inline simulation cannot hold up a frame for long.
+     * @param maxAdvanceNanos the time budget in nanoseconds, 0 for no limit
+     */
+    public void setMaxAdvanceNanos(long maxAdvanceNanos) {
+        this.maxAdvanceNanos = maxAdvanceNanos;
+    }
+}
@@ -0,0 +1,201 @@
+package io.github.whack25.simulation;
+
+import livegraph.Graph;
+import livegraph.GraphNode;
+import livegraph.Incident;
+import livegraph.NodeState;
+import livegraph.RobotStore;
+import livegraph.TickMetrics;
+
+/**
+ * An immutable copy of the parts of the simulation the renderer draws, taken between ticks.
+ * The renderer reads a snapshot while the simulation carries on ticking, possibly on another thread.
+ * Nodes are referred to by their dense index in the graph; their positions and tile types never change,
+ * so they are read from the graph directly.
+ */
+public class SimulationSnapshot {
+    private final long tick;
+    private final long robotsSpawned;
+    private final long robotsHome;
+    private final boolean[] blocked; // whether each node is blocked, by node index
+
+    private final int robotCount; // robots are held in node index order
+    private final int[] nodeRobotStarts; // robots at node i are at positions nodeRobotStarts[i] .. nodeRobotStarts[i + 1] - 1
+    private final int[] robotIds;
+    private final float[] robotX; // bottom left of the cell the robot is drawn in, between its origin and its node
+    private final float[] robotY;
+    private final int[] robotNodes; // index of the node each robot occupies
+    private final int[] robotDestinations; // index of each robot's destination node
+    private final int[] robotSlots; // open addressing table from robot ID to position + 1, 0 for an empty slot
+    private final TickMetrics tickMetrics; // measurements of the last tick, null if metrics are off
+    private final long incidentCount; // random incidents so far
+    private final Incident lastIncident; // the most recent random incident, null if there has been none
+
+    private SimulationSnapshot(long tick, long robotsSpawned, long robotsHome, boolean[] blocked, int robotCount,
+                               int[] nodeRobotStarts, int[] robotIds, float[] robotX, float[] robotY, int[] robotNodes, int[] robotDestinations,
+                               TickMetrics tickMetrics, long incidentCount, Incident lastIncident) {
+        this.tick = tick;
+        this.robotsSpawned = robotsSpawned;
+        this.robotsHome = robotsHome;
+        this.blocked = blocked;
+        this.robotCount = robotCount;
+        this.nodeRobotStarts = nodeRobotStarts;
+        this.robotIds = robotIds;
+        this.robotX = robotX;
+        this.robotY = robotY;
+        this.robotNodes = robotNodes;
+        this.robotDestinations = robotDestinations;
+        this.tickMetrics = tickMetrics;
+        this.incidentCount = incidentCount;
+        this.lastIncident = lastIncident;
+        this.robotSlots = new int[Integer.highestOneBit(Math.max(1, robotCount)) * 4]; // at most half full
+        for (int i = 0; i < robotCount; i++) {
+            int slot = slotOf(robotIds[i]);
+            while (robotSlots[slot] != 0) {
+                slot = (slot + 1) & (robotSlots.length - 1);
+            }
+            robotSlots[slot] = i + 1;
+        }
+    }
+
+    private int slotOf(int robotId) {
+        // the top bits of the product, as many as the table needs, so large tables use every slot
+        return (robotId * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(robotSlots.length));
+    }
+
+    /**
+     * Copies the current state of a graph. Must be called on the thread that ticks the graph.
+     * @param graph the graph to copy
+     * @param robotsSpawned the number of robots spawned so far
+     * @param robotsHome the number of robots that have reached their destination so far
+     * @return the snapshot
+     */
+    static SimulationSnapshot capture(Graph<Integer> graph, long robotsSpawned, long robotsHome) {
+        int nodeCount = graph.getNodeCount();
+        NodeState state = graph.getNodeState();
+        RobotStore robots = graph.getRobotStore();
+        boolean[] blocked = new boolean[nodeCount];
+        int[] nodeRobotStarts = new int[nodeCount + 1];
+        for (int i = 0; i < nodeCount; i++) {
+            blocked[i] = state.isBlocked(i);
+            nodeRobotStarts[i + 1] = nodeRobotStarts[i] + state.getOccupancy(i);
+        }
+        int robotCount = nodeRobotStarts[nodeCount];
+
+        int[] robotIds = new int[robotCount];
+        float[] robotX = new float[robotCount];
+        float[] robotY = new float[robotCount];
+        int[] robotNodes = new int[robotCount];
+        int[] robotDestinations = new int[robotCount];
+        int robot = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            GraphNode<Integer, Integer> node = graph.getNodeByIndex(i);
+            for (int slot = state.getFirstOccupant(i); slot >= 0; slot = robots.getNext(slot)) {
+                float progress = 1.0f - ((float) robots.getRemainingProgression(slot) / (float) robots.getTotalEdgeWeight(slot));
+                robotIds[robot] = robots.getId(slot);
+                robotX[robot] = node.getX() * progress + robots.getOriginX(slot) * (1 - progress);
+                robotY[robot] = node.getY() * progress + robots.getOriginY(slot) * (1 - progress);
+                robotNodes[robot] = i;
+                robotDestinations[robot] = robots.getDestination(slot);
+                robot++;
+            }
+        }
+        return new SimulationSnapshot(graph.getTickCount(), robotsSpawned, robotsHome, blocked, robotCount,
+            nodeRobotStarts, robotIds, robotX, robotY, robotNodes, robotDestinations, graph.getLastTickMetrics(),
+            graph.getIncidents().getIncidentCount(), graph.getIncidents().getLastIncident());
+    }
+
+    /**
+     * Finds a robot in this snapshot by its ID.
+     * @param robotId the ID of the robot
+     * @return the robot's position in this snapshot, or -1 if it is not in the graph
+     */
+    public int findRobot(int robotId) {
+        for (int slot = slotOf(robotId); robotSlots[slot] != 0; slot = (slot + 1) & (robotSlots.length - 1)) {
+            if (robotIds[robotSlots[slot] - 1] == robotId) return robotSlots[slot] - 1;
+        }
+        return -1;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public long getRobotsSpawned() {
+        return robotsSpawned;
+    }
+
+    public long getRobotsHome() {
+        return robotsHome;
+    }
+
+    /**
+     * Gets the measurements of the tick this snapshot was taken after.
+     * @return the metrics, or null if metrics were not enabled on the graph
+     */
+    public TickMetrics getTickMetrics() {
+        return tickMetrics;
+    }
+
+    public long getIncidentCount() {
+        return incidentCount;
+    }
+
+    /**
+     * Gets the most recent random incident as of this snapshot.
+     * @return the incident, or null if there has been none
+     */
+    public Incident getLastIncident() {
+        return lastIncident;
+    }
+
+    public int getNodeCount() {
+        return blocked.length;
+    }
+
+    public boolean isBlocked(int nodeIndex) {
+        return blocked[nodeIndex];
+    }
+
+    public int getRobotCount() {
+        return robotCount;
+    }
+
+    /**
+     * Gets the position of the first robot occupying a node. The robots at a node are contiguous.
+     * @param nodeIndex the index of the node
+     * @return the position of its first robot
+     */
+    public int getRobotsStart(int nodeIndex) {
+        return nodeRobotStarts[nodeIndex];
+    }
+
+    /**
+     * Gets the position after the last robot occupying a node.
+     * @param nodeIndex the index of the node
+     * @return the position after its last robot
+     */
+    public int getRobotsEnd(int nodeIndex) {
+        return nodeRobotStarts[nodeIndex + 1];
+    }
+
+    public int getRobotId(int robot) {
+        return robotIds[robot];
+    }
+
+    public float getRobotX(int robot) {
+        return robotX[robot];
+    }
+
+    public float getRobotY(int robot) {
+        return robotY[robot];
+    }
+
+    public int getRobotNode(int robot) {
+        return robotNodes[robot];
+    }
+
+    public int getRobotDestination(int robot) {
+        return robotDestinations[robot];
+    }
+}
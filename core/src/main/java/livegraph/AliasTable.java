@@ -0,0 +1,73 @@
+package livegraph;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples from a fixed discrete distribution in constant time with Vose's alias method. Each outcome gets a column
+ * holding its own share of one unit of probability, topped up with a share of a single other outcome, so a sample is
+ * one uniform column and one coin flip.
+ */
+final class AliasTable {
+    private final double[] chance; // chance of each column giving its own outcome rather than its alias
+    private final int[] alias;
+
+    /**
+     * Builds the table for outcomes with the given weights.
+     * @param weights the weight of each outcome, at least 0 and not all 0
+     */
+    AliasTable(double[] weights) {
+        int n = weights.length;
+        double total = 0;
+        for (double weight : weights) {
+            if (!(weight >= 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Weights must be finite and at least 0, not " + weight);
+            }
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("At least one weight must be above 0");
+        }
+        chance = new double[n];
+        alias = new int[n];
+        int[] small = new int[n]; // columns below one unit, to be topped up
+        int[] large = new int[n]; // columns above one unit, to top others up from
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            chance[i] = weights[i] * n / total;
+            if (chance[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            alias[less] = more;
+            chance[more] -= 1 - chance[less];
+            if (chance[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // whatever is left is one unit up to rounding
+        while (largeCount > 0) {
+            chance[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            chance[small[--smallCount]] = 1;
+        }
+    }
+
+    /**
+     * Draws an outcome.
+     * @param random the stream to draw from
+     * @return the outcome's index in the weights the table was built from
+     */
+    int sample(SplittableRandom random) {
+        int column = random.nextInt(chance.length);
+        return random.nextDouble() < chance[column] ? column : alias[column];
+    }
+}
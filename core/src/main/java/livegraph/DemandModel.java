@@ -0,0 +1,312 @@
+package livegraph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.LongToDoubleFunction;
+
+/**
+ * Decides where and when robots start trips. The number of trips starting on a tick is drawn from the Poisson
+ * distribution around the spawn rate, scaled by a demand profile over time, so an arrival rate can be set directly
+ * and varied through the day. Each trip's origin and destination are then drawn from an origin-destination matrix
+ * over square zones of the grid, with an alias table so a trip costs the same however many zones there are, and the
+ * houses in each zone kept in a dense array. By default the whole grid is one zone, so every trip is between two
+ * different houses picked uniformly. Nothing is visited for houses that start no trip.
+ *
+ * The model draws from its own stream of the graph's seed, so runs with the same seed are identical.
+ */
+public final class DemandModel {
+    public static final double DEFAULT_SPAWNS_PER_HOUSE = 0.01; // trips starting per house and tick
+    private static final double POISSON_CHUNK = 64; // largest mean drawn from at once, larger means are split up
+
+    private final List<? extends GraphNode<?, ?>> nodesByIndex;
+    private final int gridWidth;
+    private final int gridHeight;
+    private double spawnsPerHouse = DEFAULT_SPAWNS_PER_HOUSE;
+    private double spawnRate = -1; // trips starting per tick whatever the number of houses, below 0 to go by spawnsPerHouse
+    private LongToDoubleFunction profile = tick -> 1; // multiplies the spawn rate on each tick
+    private int zoneSize = 0; // cells along each side of a zone, 0 for the whole grid as one zone
+    private double[][] matrix; // trip weights from each zone to each zone, null for one zone
+    private SplittableRandom random;
+
+    // rebuilt when out of date
+    private int[] houses; // every house, grouped by zone, in index order within each
+    private int[] zoneStarts; // where each zone's houses start in houses, one more than the zone count long
+    private AliasTable pairs; // over (origin zone * zones + destination zone), null if no trip is possible
+    private boolean built = false; // whether the houses and the alias table are up to date
+
+    // trips drawn for the current tick
+    private int drawnCount = 0;
+    private int[] drawnOrigins = new int[4];
+    private int[] drawnDestinations = new int[4];
+
+    DemandModel(List<? extends GraphNode<?, ?>> nodesByIndex, int gridWidth, int gridHeight, long seed) {
+        this.nodesByIndex = nodesByIndex;
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        setSeed(seed);
+    }
+
+    /**
+     * Sets the mean number of trips starting on each tick, per house, so demand grows with the map.
+     * @param spawnsPerHouse the mean per house and tick, 0 for none
+     */
+    public void setSpawnsPerHouse(double spawnsPerHouse) {
+        if (!(spawnsPerHouse >= 0) || Double.isInfinite(spawnsPerHouse)) {
+            throw new IllegalArgumentException("Spawns per house must be finite and at least 0, not " + spawnsPerHouse);
+        }
+        this.spawnsPerHouse = spawnsPerHouse;
+        this.spawnRate = -1;
+    }
+
+    /**
+     * Sets the mean number of trips starting on each tick across the whole map, whatever the number of houses,
+     * to load the network at a known arrival rate.
+     * @param spawnRate the mean per tick, 0 for none
+     */
+    public void setSpawnRate(double spawnRate) {
+        if (!(spawnRate >= 0) || Double.isInfinite(spawnRate)) {
+            throw new IllegalArgumentException("Spawn rate must be finite and at least 0, not " + spawnRate);
+        }
+        this.spawnRate = spawnRate;
+    }
+
+    /**
+     * Gets the mean number of trips starting on a tick, with the demand profile applied.
+     * @param tick the tick
+     * @return the mean number of trips
+     */
+    public double getSpawnRate(long tick) {
+        ensureBuilt();
+        double rate = spawnRate >= 0 ? spawnRate : spawnsPerHouse * houses.length;
+        return rate * profile.applyAsDouble(tick);
+    }
+
+    /**
+     * Sets how demand varies over time, as a multiplier of the spawn rate on each tick.
+     * @param profile the multiplier for each tick, at least 0, or null for a flat profile
+     * @see #cyclicProfile(int, double...)
+     */
+    public void setProfile(LongToDoubleFunction profile) {
+        this.profile = profile == null ? tick -> 1 : profile;
+    }
+
+    /**
+     * Makes a demand profile that steps through multipliers and repeats, such as 24 hourly multipliers with peaks
+     * for the morning and evening rush hours.
+     * @param ticksPerStep how many ticks each multiplier lasts
+     * @param multipliers the multipliers, at least 0
+     * @return the profile, starting with the first multiplier on tick 1
+     */
+    public static LongToDoubleFunction cyclicProfile(int ticksPerStep, double... multipliers) {
+        if (ticksPerStep <= 0 || multipliers.length == 0) {
+            throw new IllegalArgumentException("A profile needs at least one multiplier lasting at least one tick");
+        }
+        for (double multiplier : multipliers) {
+            if (!(multiplier >= 0) || Double.isInfinite(multiplier)) {
+                throw new IllegalArgumentException("Multipliers must be finite and at least 0, not " + multiplier);
+            }
+        }
+        double[] steps = multipliers.clone();
+        return tick -> steps[(int) Math.floorMod(Math.floorDiv(tick - 1, (long) ticksPerStep), (long) steps.length)];
+    }
+
+    /**
+     * Sets the relative number of trips between each pair of zones. The grid is split into square zones numbered
+     * row by row, so the zone of cell (x, y) is x / zoneSize + (y / zoneSize) * zonesAcross. Trips from a zone to
+     * itself never start and end at the same house, and pairs of zones without the houses for a trip are skipped.
+     * @param zoneSize cells along each side of a zone
+     * @param weights the weight of trips from each zone (first index) to each zone (second index), at least 0
+     */
+    public void setOriginDestinationMatrix(int zoneSize, double[][] weights) {
+        int zones = getZoneCount(zoneSize);
+        if (weights.length != zones) {
+            throw new IllegalArgumentException("Expected " + zones + " zones of " + zoneSize + " cells, not " + weights.length);
+        }
+        double[][] copy = new double[zones][];
+        for (int zone = 0; zone < zones; zone++) {
+            if (weights[zone].length != zones) {
+                throw new IllegalArgumentException("Expected " + zones + " weights from zone " + zone + ", not " + weights[zone].length);
+            }
+            for (double weight : weights[zone]) {
+                if (!(weight >= 0) || Double.isInfinite(weight)) {
+                    throw new IllegalArgumentException("Weights must be finite and at least 0, not " + weight);
+                }
+            }
+            copy[zone] = weights[zone].clone();
+        }
+        this.zoneSize = zoneSize;
+        this.matrix = copy;
+        built = false;
+    }
+
+    /**
+     * Goes back to trips between any two houses, picked uniformly.
+     */
+    public void clearOriginDestinationMatrix() {
+        zoneSize = 0;
+        matrix = null;
+        built = false;
+    }
+
+    /**
+     * Gets the number of zones the grid splits into.
+     * @param zoneSize cells along each side of a zone
+     * @return the number of zones
+     */
+    public int getZoneCount(int zoneSize) {
+        if (zoneSize <= 0) {
+            throw new IllegalArgumentException("Zone size must be above 0, not " + zoneSize);
+        }
+        return zonesAcross(zoneSize) * ((gridHeight + zoneSize - 1) / zoneSize);
+    }
+
+    private int zonesAcross(int zoneSize) {
+        return (gridWidth + zoneSize - 1) / zoneSize;
+    }
+
+    /**
+     * Gets the number of houses trips can start and end at.
+     * @return the number of houses
+     */
+    public int getHouseCount() {
+        ensureBuilt();
+        return houses.length;
+    }
+
+    /**
+     * Restarts the model's random stream.
+     * @param seed the seed of the stream
+     */
+    void setSeed(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Records that nodes have been added or replaced, so the houses are found again.
+     */
+    void nodesChanged() {
+        built = false;
+    }
+
+    /**
+     * Draws the trips starting on a tick, read back with {@link #getDrawnCount()}, {@link #getDrawnOrigin(int)} and
+     * {@link #getDrawnDestination(int)}.
+     * @param tick the tick
+     */
+    void draw(long tick) {
+        drawnCount = 0;
+        double mean = getSpawnRate(tick);
+        if (pairs == null || !(mean > 0)) {
+            return;
+        }
+        int count = nextPoisson(mean);
+        if (drawnOrigins.length < count) {
+            drawnOrigins = new int[Math.max(count, drawnOrigins.length * 2)];
+            drawnDestinations = new int[drawnOrigins.length];
+        }
+        int zones = zoneStarts.length - 1;
+        for (int i = 0; i < count; i++) {
+            int pair = pairs.sample(random);
+            int origin = nextHouse(pair / zones);
+            int destination = nextHouse(pair % zones);
+            while (destination == origin) { // the zone has another house, or the pair would have no weight
+                destination = nextHouse(pair % zones);
+            }
+            drawnOrigins[i] = origin;
+            drawnDestinations[i] = destination;
+        }
+        drawnCount = count;
+    }
+
+    private int nextHouse(int zone) {
+        int start = zoneStarts[zone];
+        return houses[start + random.nextInt(zoneStarts[zone + 1] - start)];
+    }
+
+    /**
+     * Draws from the Poisson distribution by inversion, in chunks so that the chance of no events never underflows.
+     * @return the number of events, with the given mean
+     */
+    private int nextPoisson(double mean) {
+        int count = 0;
+        for (; mean > POISSON_CHUNK; mean -= POISSON_CHUNK) {
+            count += nextPoissonChunk(POISSON_CHUNK);
+        }
+        return count + nextPoissonChunk(mean);
+    }
+
+    private int nextPoissonChunk(double mean) {
+        double u = random.nextDouble();
+        double chance = Math.exp(-mean); // of exactly k events
+        double below = chance; // of at most k events
+        int k = 0;
+        while (u >= below && chance > 0) {
+            k++;
+            chance *= mean / k;
+            below += chance;
+        }
+        return k;
+    }
+
+    private void ensureBuilt() {
+        if (built) {
+            return;
+        }
+        int zones = matrix == null ? 1 : getZoneCount(zoneSize);
+        int[] zoneOfNode = new int[nodesByIndex.size()];
+        zoneStarts = new int[zones + 1];
+        for (int i = 0; i < nodesByIndex.size(); i++) {
+            GraphNode<?, ?> node = nodesByIndex.get(i);
+            if (node.getTileType() == NodeType.HOUSE) {
+                zoneOfNode[i] = matrix == null ? 0 : zoneOf(node.getX(), node.getY());
+                zoneStarts[zoneOfNode[i] + 1]++;
+            }
+        }
+        for (int zone = 0; zone < zones; zone++) {
+            zoneStarts[zone + 1] += zoneStarts[zone];
+        }
+        houses = new int[zoneStarts[zones]];
+        int[] fill = Arrays.copyOf(zoneStarts, zones);
+        for (int i = 0; i < nodesByIndex.size(); i++) {
+            if (nodesByIndex.get(i).getTileType() == NodeType.HOUSE) {
+                houses[fill[zoneOfNode[i]]++] = i;
+            }
+        }
+
+        double[] weights = new double[zones * zones];
+        double total = 0;
+        for (int from = 0; from < zones; from++) {
+            for (int to = 0; to < zones; to++) {
+                int fromHouses = zoneStarts[from + 1] - zoneStarts[from];
+                int toHouses = zoneStarts[to + 1] - zoneStarts[to];
+                boolean possible = from == to ? fromHouses >= 2 : fromHouses > 0 && toHouses > 0;
+                weights[from * zones + to] = !possible ? 0 : matrix == null ? 1 : matrix[from][to];
+                total += weights[from * zones + to];
+            }
+        }
+        pairs = total > 0 ? new AliasTable(weights) : null;
+        built = true;
+    }
+
+    /**
+     * @return the zone of a cell, with cells outside the grid in the nearest zone
+     */
+    private int zoneOf(int x, int y) {
+        int column = Math.max(0, Math.min(gridWidth - 1, x)) / zoneSize;
+        int row = Math.max(0, Math.min(gridHeight - 1, y)) / zoneSize;
+        return column + row * zonesAcross(zoneSize);
+    }
+
+    int getDrawnCount() {
+        return drawnCount;
+    }
+
+    int getDrawnOrigin(int trip) {
+        return drawnOrigins[trip];
+    }
+
+    int getDrawnDestination(int trip) {
+        return drawnDestinations[trip];
+    }
+}
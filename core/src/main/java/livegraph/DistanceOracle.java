@@ -0,0 +1,360 @@
+package livegraph;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Distances over the static lane graph, using edge weights alone, worked out once in advance.
+ *
+ * The cheapest base cost between every pair of houses is kept in a matrix, so looking one up is a single array
+ * read. For every node the base cost from and to a handful of landmarks is kept too, which by the triangle
+ * inequality gives a lower bound on the base cost between any two nodes (ALT). Congestion and blockages only ever
+ * make a path dearer, so the bound never overshoots the congestion-aware cost either, and {@link SearchMode#LANDMARKS}
+ * uses it to tighten the A* estimate. That halves the nodes a search settles, but the bound is read for every node
+ * reached, so on generated maps the search is not reliably faster than plain A*; the house to house lookup is
+ * where the oracle pays off.
+ *
+ * An oracle only fits the topology it was built from. It can be written out with the map and read back, and is
+ * checked against the topology when it is handed to a graph.
+ */
+public final class DistanceOracle {
+    /** Distance between two nodes with no path between them. */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int MAGIC = 0x57484F52; // "WHOR", marks the start of a written oracle
+    private static final int VERSION = 1;
+    /** Most landmarks a search takes bounds from, as each one costs two lookups for every node the search reaches. */
+    static final int ACTIVE_LANDMARKS = 4;
+
+    private final long fingerprint; // of the topology the oracle was built from
+    private final int nodeCount;
+    private final int[] landmarks; // node index of each landmark
+    private final int[] landmarkDistances; // for node n and landmark l, the cost from l to n at [2 * (n * L + l)] and from n to l just after
+    private final int[] houses; // node index of each house
+    private final int[] houseSlots; // position of each node in houses, -1 for nodes that are not houses
+    private final int[] houseDistances; // cost from house a to house b at [a * houses.length + b]
+    private final long buildNanos;
+
+    private DistanceOracle(long fingerprint, int nodeCount, int[] landmarks, int[] landmarkDistances, int[] houses,
+                           int[] houseDistances, long buildNanos) {
+        this.fingerprint = fingerprint;
+        this.nodeCount = nodeCount;
+        this.landmarks = landmarks;
+        this.landmarkDistances = landmarkDistances;
+        this.houses = houses;
+        this.houseDistances = houseDistances;
+        this.buildNanos = buildNanos;
+        houseSlots = new int[nodeCount];
+        Arrays.fill(houseSlots, -1);
+        for (int slot = 0; slot < houses.length; slot++) {
+            houseSlots[houses[slot]] = slot;
+        }
+    }
+
+    /**
+     * Builds an oracle over a topology. Landmarks are picked one at a time, each the node furthest from those
+     * already picked, so that they spread out to the edges of the map where their bounds are tightest.
+     * @param topology the topology to build over
+     * @param nodesByIndex the nodes of the topology, where the node at position i has index i
+     * @param landmarkCount how many landmarks to pick, at most the number of nodes
+     * @return the oracle
+     */
+    static DistanceOracle build(GraphTopology topology, List<? extends GraphNode<?, ?>> nodesByIndex, int landmarkCount) {
+        if (landmarkCount < 1) {
+            throw new IllegalArgumentException("A distance oracle needs at least one landmark");
+        }
+        long start = System.nanoTime();
+        int nodeCount = topology.getNodeCount();
+        landmarkCount = Math.min(landmarkCount, nodeCount);
+        IntMinHeap heap = new IntMinHeap();
+
+        int[] landmarks = new int[landmarkCount];
+        int[] landmarkDistances = new int[2 * nodeCount * landmarkCount];
+        int[] fromLandmark = new int[nodeCount];
+        int[] toLandmark = new int[nodeCount];
+        int[] nearest = new int[nodeCount]; // cost from the nearest landmark picked so far
+        Arrays.fill(nearest, UNREACHABLE);
+        baseDistances(topology.offsets, topology.targets, topology.weights, 0, fromLandmark, heap);
+        int next = furthest(fromLandmark, 0);
+        for (int l = 0; l < landmarkCount; l++) {
+            landmarks[l] = next;
+            baseDistances(topology.offsets, topology.targets, topology.weights, next, fromLandmark, heap);
+            baseDistances(topology.reverseOffsets, topology.sources, topology.reverseWeights, next, toLandmark, heap);
+            for (int n = 0; n < nodeCount; n++) {
+                landmarkDistances[2 * (n * landmarkCount + l)] = fromLandmark[n];
+                landmarkDistances[2 * (n * landmarkCount + l) + 1] = toLandmark[n];
+                nearest[n] = Math.min(nearest[n], fromLandmark[n]);
+            }
+            next = furthest(nearest, next);
+        }
+
+        List<Integer> houseList = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            if (nodesByIndex.get(i).getTileType() == NodeType.HOUSE) {
+                houseList.add(i);
+            }
+        }
+        int[] houses = houseList.stream().mapToInt(Integer::intValue).toArray();
+        int[] houseDistances = new int[houses.length * houses.length];
+        ThreadLocal<int[]> distances = ThreadLocal.withInitial(() -> new int[nodeCount]);
+        ThreadLocal<IntMinHeap> heaps = ThreadLocal.withInitial(IntMinHeap::new);
+        IntStream.range(0, houses.length).parallel().forEach(a -> {
+            int[] dist = distances.get();
+            baseDistances(topology.offsets, topology.targets, topology.weights, houses[a], dist, heaps.get());
+            for (int b = 0; b < houses.length; b++) {
+                houseDistances[a * houses.length + b] = dist[houses[b]];
+            }
+        });
+
+        return new DistanceOracle(fingerprint(topology), nodeCount, landmarks, landmarkDistances, houses,
+            houseDistances, System.nanoTime() - start);
+    }
+
+    /**
+     * Gets the reachable node with the largest distance, or the fallback if no node is reachable but not yet 0 away.
+     */
+    private static int furthest(int[] distances, int fallback) {
+        int best = fallback;
+        int bestDistance = 0;
+        for (int n = 0; n < distances.length; n++) {
+            if (distances[n] != UNREACHABLE && distances[n] > bestDistance) {
+                best = n;
+                bestDistance = distances[n];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Plain Dijkstra on edge weights alone, ignoring congestion and blockages.
+     * Run over the reverse arrays of a topology, it gives the cost from every node to the source instead.
+     */
+    private static void baseDistances(int[] offsets, int[] targets, int[] weights, int source, int[] dist, IntMinHeap heap) {
+        Arrays.fill(dist, UNREACHABLE);
+        heap.clear();
+        dist[source] = 0;
+        heap.push(source, 0);
+        while (!heap.isEmpty()) {
+            int current = heap.peekNode();
+            int currentDist = heap.peekKey();
+            heap.pop();
+            if (currentDist > dist[current]) {
+                continue; // stale heap entry
+            }
+            for (int e = offsets[current], end = offsets[current + 1]; e < end; e++) {
+                int nextDist = currentDist + weights[e];
+                if (nextDist < dist[targets[e]]) {
+                    dist[targets[e]] = nextDist;
+                    heap.push(targets[e], nextDist);
+                }
+            }
+        }
+    }
+
+    /**
+     * A hash of a topology's edges, to tell whether an oracle was built from it.
+     */
+    private static long fingerprint(GraphTopology topology) {
+        long hash = topology.getNodeCount();
+        hash = hash * 31 + Arrays.hashCode(topology.offsets);
+        hash = hash * 31 + Arrays.hashCode(topology.targets);
+        hash = hash * 31 + Arrays.hashCode(topology.weights);
+        return hash;
+    }
+
+    /**
+     * Whether the oracle was built from a topology with the same edges as this one.
+     */
+    boolean fits(GraphTopology topology) {
+        return topology.getNodeCount() == nodeCount && fingerprint(topology) == fingerprint;
+    }
+
+    /**
+     * Picks the landmarks that give the largest bounds between the two ends of a search, as those are the ones
+     * likely to give the largest bounds along the way. Landmarks behind the source or past the target bound a
+     * path tightly, those off to the side hardly at all, so a few well chosen ones do nearly as well as every one.
+     * @param source the index of the node the search starts at
+     * @param target the index of the node the search ends at
+     * @param selected filled with the numbers of the chosen landmarks, at most {@link #ACTIVE_LANDMARKS} of them
+     * @param bounds working space for the bounds of the chosen landmarks, as long as selected
+     * @return how many landmarks were chosen
+     */
+    int selectLandmarks(int source, int target, int[] selected, int[] bounds) {
+        int count = 0;
+        for (int l = 0; l < landmarks.length; l++) {
+            int bound = landmarkBound(source, target, l);
+            if (bound <= 0 || (count == ACTIVE_LANDMARKS && bound <= bounds[count - 1])) {
+                continue; // no help, or no better than the weakest already chosen
+            }
+            int slot = count < ACTIVE_LANDMARKS ? count++ : ACTIVE_LANDMARKS - 1;
+            while (slot > 0 && bounds[slot - 1] < bound) { // keep the chosen ones sorted by bound, largest first
+                bounds[slot] = bounds[slot - 1];
+                selected[slot] = selected[slot - 1];
+                slot--;
+            }
+            bounds[slot] = bound;
+            selected[slot] = l;
+        }
+        return count;
+    }
+
+    /**
+     * A lower bound on the cost of the cheapest path between two nodes, from the chosen landmarks.
+     * @param from the index of the node the path starts at
+     * @param to the index of the node the path ends at
+     * @param selected the numbers of the landmarks to take bounds from
+     * @param count how many of selected to use
+     * @return the largest bound any of the landmarks gives, at least 0
+     */
+    int lowerBound(int from, int to, int[] selected, int count) {
+        int bound = 0;
+        for (int i = 0; i < count; i++) {
+            bound = Math.max(bound, landmarkBound(from, to, selected[i]));
+        }
+        return bound;
+    }
+
+    /**
+     * A lower bound on the cost of the cheapest path between two nodes from one landmark L: cost(L, to) -
+     * cost(L, from) and cost(from, L) - cost(to, L) can be no more than cost(from, to). Differences with an
+     * unreachable side say nothing and are skipped.
+     */
+    private int landmarkBound(int from, int to, int landmark) {
+        int[] landmarkDistances = this.landmarkDistances;
+        int fromBase = 2 * (from * landmarks.length + landmark);
+        int toBase = 2 * (to * landmarks.length + landmark);
+        int bound = 0;
+        int landmarkToFrom = landmarkDistances[fromBase];
+        int landmarkToTo = landmarkDistances[toBase];
+        if (landmarkToFrom != UNREACHABLE && landmarkToTo != UNREACHABLE) {
+            bound = landmarkToTo - landmarkToFrom;
+        }
+        int fromToLandmark = landmarkDistances[fromBase + 1];
+        int toToLandmark = landmarkDistances[toBase + 1];
+        if (fromToLandmark != UNREACHABLE && toToLandmark != UNREACHABLE) {
+            bound = Math.max(bound, fromToLandmark - toToLandmark);
+        }
+        return bound;
+    }
+
+    /**
+     * Gets the cost of the cheapest path between two houses on edge weights alone, as if the map were empty.
+     * @param from the house to start from
+     * @param to the house to end at
+     * @return the base cost, or {@link #UNREACHABLE} if there is no path
+     * @throws IllegalArgumentException if either node is not a house of the map the oracle was built from
+     */
+    public int getBaseDistance(GraphNode<?, ?> from, GraphNode<?, ?> to) {
+        int fromSlot = houseSlot(from);
+        int toSlot = houseSlot(to);
+        return houseDistances[fromSlot * houses.length + toSlot];
+    }
+
+    private int houseSlot(GraphNode<?, ?> node) {
+        int index = node.getIndex();
+        if (index < 0 || index >= nodeCount || houseSlots[index] < 0) {
+            throw new IllegalArgumentException("Node " + node.getNodeId() + " is not a house the oracle knows of");
+        }
+        return houseSlots[index];
+    }
+
+    public int getLandmarkCount() {
+        return landmarks.length;
+    }
+
+    public int getHouseCount() {
+        return houses.length;
+    }
+
+    /**
+     * Gets how long building the oracle took. An oracle that was read back reports the time of the original build.
+     * @return the build time in nanoseconds
+     */
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /**
+     * Gets the memory taken by the oracle's arrays, which grows with nodes times landmarks and with houses squared.
+     * @return the size in bytes
+     */
+    public long getMemoryBytes() {
+        return 4L * (landmarks.length + landmarkDistances.length + houses.length + houseSlots.length + houseDistances.length);
+    }
+
+    /**
+     * Writes the oracle, so that it can be stored alongside the map it was built from.
+     * @param out where to write it
+     * @throws IOException if writing fails
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(fingerprint);
+        out.writeInt(nodeCount);
+        out.writeLong(buildNanos);
+        writeInts(out, landmarks);
+        writeInts(out, landmarkDistances);
+        writeInts(out, houses);
+        writeInts(out, houseDistances);
+    }
+
+    /**
+     * Reads an oracle written by {@link #write}.
+     * @param in where to read it from
+     * @return the oracle
+     * @throws IOException if reading fails or the data is not an oracle
+     */
+    public static DistanceOracle read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a distance oracle");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported distance oracle version " + version);
+        }
+        long fingerprint = in.readLong();
+        int nodeCount = in.readInt();
+        long buildNanos = in.readLong();
+        int[] landmarks = readInts(in);
+        int[] landmarkDistances = readInts(in);
+        int[] houses = readInts(in);
+        int[] houseDistances = readInts(in);
+        if (nodeCount < 0 || landmarkDistances.length != 2 * nodeCount * landmarks.length
+            || houseDistances.length != houses.length * houses.length
+            || Arrays.stream(houses).anyMatch(house -> house < 0 || house >= nodeCount)) {
+            throw new IOException("Corrupt distance oracle");
+        }
+        return new DistanceOracle(fingerprint, nodeCount, landmarks, landmarkDistances, houses, houseDistances, buildNanos);
+    }
+
+    private static void writeInts(DataOutput out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt distance oracle");
+        }
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d landmarks, %d houses, built in %.1f ms, %.1f KB", landmarks.length, houses.length,
+            buildNanos / 1e6, getMemoryBytes() / 1024.0);
+    }
+}
@@ -1,17 +1,55 @@
 package livegraph;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 
 public class Graph<N> {
-    private HashMap<N, GraphNode<Integer, N>> nodes;
+    private final ArrayList<GraphNode<Integer, N>> nodesByIndex = new ArrayList<>(); // nodes by their dense index
+    private final NodeIdIndex<N> indexById; // dense index of each node ID
+    private final NodeState nodeState = new NodeState(16); // dynamic node state, indexed like nodesByIndex
+    private final PathFinder<Integer, N> pathFinder;
+    private final int[] cellIndex; // node index + 1 for each in-grid cell, at x + y * gridWidth. 0 if the cell is empty
+    private final HashMap<Long, Integer> outOfGridCellIndex = new HashMap<>(); // node index for cells outside the grid
+    private final RobotStore robots = new RobotStore(16); // every robot in the graph
+    private final MoveBuffer moves = new MoveBuffer(); // decisions made during the current tick
+    private final TickScheduler scheduler = new TickScheduler(); // the nodes with something to do on each tick
+    private boolean eventDrivenTicks = true; // whether only woken nodes decide, rather than every node every tick
+    private long[] moveOrder = new long[16]; // move requests sorted by target node, as (target << 32 | request)
+    private long[] arrivalOrder = new long[16]; // arrivals sorted by node, as (node << 32 | arrival)
+    private int tickThreads = 1; // threads the decide phase runs on, 1 to tick on the calling thread
+    private ForkJoinPool tickPool; // pool for the decide phase, null when ticking on one thread
+    private int tileSize = 16; // cells along each side of a tile of nodes decided together
+    private int[] tileOf; // the tile of each node, by index. null when out of date
+    private int tileCount; // tiles across the whole grid, including empty ones
+    private int[] tileFill = new int[0]; // nodes deciding this tick in each tile, then where the next one goes
+    private int[] tileStarts = new int[1]; // where each busy tile's nodes start in tileNodes, one more than busyTiles long
+    private int[] tileNodes = new int[16]; // the nodes deciding this tick, grouped by busy tile, in index order within each
+    private int busyTiles; // tiles with nodes deciding this tick
+    private final ArrayList<MoveBuffer> tileMoves = new ArrayList<>(); // decisions of each busy tile
     private final int gridWidth;
     private final int gridHeight;
-    private final double PROBABILITY_ROBOT_SPAWN_ON_TILE = 0.02;
     private int robotCounter = 0;
     private Runnable onRobotSpawn;
     private Runnable onRobotFinish;
     private boolean spawnRobots = true;
+    private long tickCount = 0; // number of ticks run so far
+    private long seed = new SplittableRandom().nextLong(); // seed for the spawn stream and every node's stream
+    private final DemandModel demand; // picks when and where robots start their trips
+    private final IncidentScheduler incidents = new IncidentScheduler(nodesByIndex, SplitMix.seedFor(seed, -2)); // randomly blocks nodes
+    private long completedTrips = 0; // robots that have reached their destination
+    private long totalTripTicks = 0; // sum of the ticks taken by each completed trip
+    private boolean metricsEnabled = false; // whether each tick is measured
+    private TickMetrics lastTickMetrics; // measurements of the last tick, null if it was not measured
 
     /**
      * Adds a graph with the nodes given. Note, gridWidth and gridHeight are only for reference and not enforced in any way.
@@ -20,26 +58,38 @@ public class Graph<N> {
      * @param gridWidth
      * @param gridHeight
      */
-    public Graph(HashMap<N, GraphNode<Integer, N>> nodes, int gridWidth, int gridHeight, Runnable onRobotSpawn, Runnable onRobotFinish) {
+    public Graph(Map<N, GraphNode<Integer, N>> nodes, int gridWidth, int gridHeight, Runnable onRobotSpawn, Runnable onRobotFinish) {
         // note: onRobotFinish needs to be specified in the nodes themselves
-        this.nodes = nodes;
         this.gridWidth = gridWidth;
         this.gridHeight = gridHeight;
         this.onRobotSpawn = onRobotSpawn;
         this.onRobotFinish = onRobotFinish;
+        this.indexById = new NodeIdIndex<>(gridWidth * gridHeight + 1); // room for IDs numbered over the grid, see GraphGenerator.GenerateId
+        this.pathFinder = new PathFinder<>(nodesByIndex, indexById, nodeState);
+        this.demand = new DemandModel(nodesByIndex, gridWidth, gridHeight, SplitMix.seedFor(seed, -1));
+        this.cellIndex = new int[gridWidth * gridHeight];
+        for (GraphNode<Integer, N> node : nodes.values()) {
+            indexNode(node);
+        }
+        for (GraphNode<Integer, N> node : nodesByIndex) {
+            node.adoptDetachedOccupiers(); // once every node is indexed, so robots' destinations can be found
+        }
     }
 
     public Graph(int gridWidth, int gridHeight) {
-        this.nodes = new HashMap<>();
         this.gridWidth = gridWidth;
         this.gridHeight = gridHeight;
         this.onRobotSpawn = () -> {};
         this.onRobotFinish = () -> {};
+        this.indexById = new NodeIdIndex<>(gridWidth * gridHeight + 1); // room for IDs numbered over the grid, see GraphGenerator.GenerateId
+        this.pathFinder = new PathFinder<>(nodesByIndex, indexById, nodeState);
+        this.demand = new DemandModel(nodesByIndex, gridWidth, gridHeight, SplitMix.seedFor(seed, -1));
+        this.cellIndex = new int[gridWidth * gridHeight];
     }
 
     public void setOnRobotFinish(Runnable onRobotFinish) {
         this.onRobotFinish = onRobotFinish;
-        for (GraphNode<Integer, N> node : nodes.values()) {
+        for (GraphNode<Integer, N> node : nodesByIndex) {
             node.setOnRobotFinish(onRobotFinish);
         }
     }
@@ -54,7 +104,18 @@ public class Graph<N> {
      * @return the node, or null if not found
      */
     public GraphNode<Integer,N> getNode(N node) {
-        return nodes.get(node);
+        int index = indexById.indexOf(node);
+        return index < 0 ? null : nodesByIndex.get(index);
+    }
+
+    /**
+     * Gets a node from the graph by an int ID, such as the IDs of generated maps, without boxing it.
+     * @param node the ID of the node to get
+     * @return the node, or null if not found
+     */
+    public GraphNode<Integer,N> getNode(int node) {
+        int index = indexById.indexOf(node);
+        return index < 0 ? null : nodesByIndex.get(index);
     }
 
     /**
@@ -65,36 +126,338 @@ public class Graph<N> {
         if (node.getX() < 0 || node.getX() >= gridWidth || node.getY() < 0 || node.getY() >= gridHeight) {
             throw new IllegalArgumentException("Node coordinates out of bounds");
         }
-        nodes.put(node.getNodeId(), node);
+        int existing = indexById.indexOf(node.getNodeId());
+        GraphNode<Integer,N> previous = existing < 0 ? null : nodesByIndex.get(existing);
+        if (previous != null && previous != node) {
+            // keep the replaced node's slot so indices stay dense
+            int index = previous.getIndex();
+            unindexCoordinates(previous.getX(), previous.getY(), index);
+            previous.releaseRobots();
+            nodesByIndex.set(index, node);
+            node.attach(index, pathFinder, nodeState, robots, scheduler);
+            node.setOnRobotArrived(this::recordArrival);
+            nodeState.randomState[index] = SplitMix.seedFor(seed, index);
+            indexCoordinates(node.getX(), node.getY(), index);
+            node.adoptDetachedOccupiers();
+            tileOf = null;
+            incidents.nodesChanged();
+            demand.nodesChanged();
+        } else if (previous == null) {
+            indexNode(node);
+            node.adoptDetachedOccupiers();
+        }
+    }
+
+    /**
+     * Assigns the next dense index to a node and attaches it to this graph's path finder.
+     * @param node the node to index
+     */
+    private void indexNode(GraphNode<Integer,N> node) {
+        nodeState.ensureCapacity(nodesByIndex.size() + 1);
+        scheduler.ensureCapacity(nodesByIndex.size() + 1);
+        node.attach(nodesByIndex.size(), pathFinder, nodeState, robots, scheduler);
+        indexById.put(node.getNodeId(), node.getIndex());
+        node.setOnRobotArrived(this::recordArrival);
+        nodeState.randomState[node.getIndex()] = SplitMix.seedFor(seed, node.getIndex());
+        indexCoordinates(node.getX(), node.getY(), nodesByIndex.size());
+        nodesByIndex.add(node);
+        tileOf = null;
+        incidents.nodesChanged();
+        demand.nodesChanged();
+    }
+
+    private void indexCoordinates(int x, int y, int index) {
+        if (isInGrid(x, y)) {
+            cellIndex[x + y * gridWidth] = index + 1;
+        } else {
+            outOfGridCellIndex.put(cellKey(x, y), index);
+        }
+    }
+
+    private void unindexCoordinates(int x, int y, int index) {
+        if (isInGrid(x, y)) {
+            if (cellIndex[x + y * gridWidth] == index + 1) cellIndex[x + y * gridWidth] = 0;
+        } else {
+            outOfGridCellIndex.remove(cellKey(x, y), index);
+        }
+    }
+
+    private void recordArrival(int robot) {
+        completedTrips++;
+        totalTripTicks += tickCount - robots.spawnTicks[robot];
+    }
+
+    private boolean isInGrid(int x, int y) {
+        return x >= 0 && x < gridWidth && y >= 0 && y < gridHeight;
+    }
+
+    private static long cellKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
     }
 
     /**
      * Gets a node by its coordinates.
      * @param x
      * @param y
-     * @return
+     * @return the node, or null if there is no node at the coordinates
      */
     public GraphNode<Integer,N> getNodeByCoordinates(int x, int y) {
-        for (GraphNode<Integer,N> node : nodes.values()) {
-            if (node.getX() == x && node.getY() == y) {
-                return node;
+        int index = getNodeIndexByCoordinates(x, y);
+        return index < 0 ? null : nodesByIndex.get(index);
+    }
+
+    /**
+     * Gets the index of a node by its coordinates.
+     * @param x
+     * @param y
+     * @return the node index, or -1 if there is no node at the coordinates
+     */
+    public int getNodeIndexByCoordinates(int x, int y) {
+        if (isInGrid(x, y)) {
+            return cellIndex[x + y * gridWidth] - 1;
+        }
+        if (outOfGridCellIndex.isEmpty()) {
+            return -1;
+        }
+        Integer index = outOfGridCellIndex.get(cellKey(x, y));
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Calls the action for every node with coordinates inside a rectangle, bounds inclusive.
+     * Only the cells of the rectangle are visited, not every node in the graph.
+     * @param minX the smallest x coordinate
+     * @param minY the smallest y coordinate
+     * @param maxX the largest x coordinate
+     * @param maxY the largest y coordinate
+     * @param action the action to call for each node
+     */
+    public void forEachNodeInRegion(int minX, int minY, int maxX, int maxY, Consumer<GraphNode<Integer,N>> action) {
+        int fromX = Math.max(minX, 0);
+        int fromY = Math.max(minY, 0);
+        int toX = Math.min(maxX, gridWidth - 1);
+        int toY = Math.min(maxY, gridHeight - 1);
+        for (int y = fromY; y <= toY; y++) {
+            int row = y * gridWidth;
+            for (int x = fromX; x <= toX; x++) {
+                int index = cellIndex[row + x] - 1;
+                if (index >= 0) {
+                    action.accept(nodesByIndex.get(index));
+                }
+            }
+        }
+        if (!outOfGridCellIndex.isEmpty()) {
+            for (Integer index : outOfGridCellIndex.values()) {
+                GraphNode<Integer,N> node = nodesByIndex.get(index);
+                if (node.getX() >= minX && node.getX() <= maxX && node.getY() >= minY && node.getY() <= maxY) {
+                    action.accept(node);
+                }
             }
         }
-        return null;
+    }
+
+    /**
+     * Gets every node with coordinates inside a rectangle, bounds inclusive.
+     * @param minX the smallest x coordinate
+     * @param minY the smallest y coordinate
+     * @param maxX the largest x coordinate
+     * @param maxY the largest y coordinate
+     * @return the nodes in the rectangle
+     */
+    public List<GraphNode<Integer,N>> getNodesInRegion(int minX, int minY, int maxX, int maxY) {
+        List<GraphNode<Integer,N>> region = new ArrayList<>();
+        forEachNodeInRegion(minX, minY, maxX, maxY, region::add);
+        return region;
+    }
+
+    /**
+     * Reseeds the graph's random streams. The same seed on the same graph gives the same run.
+     * Robot spawning and incidents have their own streams and every node draws from a stream derived from its index,
+     * so streams are never shared between subsystems or between nodes ticked on different threads.
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        demand.setSeed(SplitMix.seedFor(seed, -1));
+        incidents.setSeed(SplitMix.seedFor(seed, -2));
+        for (int i = 0; i < nodesByIndex.size(); i++) {
+            nodeState.randomState[i] = SplitMix.seedFor(seed, i);
+        }
+    }
+
+    public long getSeed() {
+        return seed;
     }
 
     public void toggleSpawnRobots() {
         spawnRobots = !spawnRobots;
     }
 
+    /**
+     * Sets how many ticks old a robot routing table may be and still be used after the edge costs it was built from
+     * have changed, so it is reused for up to stalenessTicks - 1 ticks after the change. Larger values trade routing
+     * freshness for less pathfinding work.
+     * @param stalenessTicks the staleness budget in ticks, 0 or 1 (the same) to always route on the costs at the
+     *                       start of the tick
+     */
+    public void setRoutingStalenessTicks(int stalenessTicks) {
+        pathFinder.setStalenessTicks(stalenessTicks);
+    }
+
+    public int getRoutingStalenessTicks() {
+        return pathFinder.getStalenessTicks();
+    }
+
+    /**
+     * Sets whether out of date routing tables are repaired from just the nodes whose congestion changed, or rebuilt
+     * from scratch. Both route robots identically; repairing is cheaper on busy maps where each tick changes the
+     * costs of a small part of the graph.
+     * @param incremental whether to repair routing tables, true by default
+     */
+    public void setIncrementalRouting(boolean incremental) {
+        pathFinder.setIncremental(incremental);
+    }
+
+    public boolean isIncrementalRouting() {
+        return pathFinder.isIncremental();
+    }
+
+    /**
+     * Sets how {@link GraphNode#getNextNodeOnPath} searches for the cheapest path. Every mode finds a path of the
+     * same cost; the others usually settle far fewer nodes than Dijkstra on trips across the map.
+     * Robots route with shared routing tables, which this does not change.
+     * @param searchMode the search mode, Dijkstra by default
+     */
+    public void setSearchMode(SearchMode searchMode) {
+        pathFinder.setSearchMode(searchMode);
+    }
+
+    public SearchMode getSearchMode() {
+        return pathFinder.getSearchMode();
+    }
+
+    /**
+     * Sets how many cells across the clusters of {@link SearchMode#HIERARCHICAL} searches are.
+     * @param clusterSize the cluster size in cells, even so that 2x2 lane blocks stay whole, 16 by default
+     */
+    public void setRoutingClusterSize(int clusterSize) {
+        pathFinder.setClusterSize(clusterSize);
+    }
+
+    public int getRoutingClusterSize() {
+        return pathFinder.getClusterSize();
+    }
+
+    /**
+     * Works out the base costs between every pair of houses, and from every node to a number of landmarks, for
+     * {@link SearchMode#LANDMARKS} searches to be guided by. Each landmark costs two searches of the whole graph
+     * and 8 bytes per node, and the house matrix one search and 4 bytes per house for each house.
+     * @param landmarkCount how many landmarks to pick, 8 to 16 is usually plenty
+     * @return the oracle, which also reports how long it took to build and how much memory it takes
+     */
+    public DistanceOracle buildDistanceOracle(int landmarkCount) {
+        return pathFinder.buildOracle(landmarkCount);
+    }
+
+    /**
+     * Sets the distance oracle {@link SearchMode#LANDMARKS} searches use, such as one read back alongside the map.
+     * @param oracle the oracle, or null to drop it
+     * @throws IllegalArgumentException if the oracle was built for a different map
+     */
+    public void setDistanceOracle(DistanceOracle oracle) {
+        pathFinder.setOracle(oracle);
+    }
+
+    /**
+     * @return the distance oracle in use, or null if none has been built or set since the edges last changed
+     */
+    public DistanceOracle getDistanceOracle() {
+        return pathFinder.getOracle();
+    }
+
+    /**
+     * Sets how many threads the decide phase of a tick runs on. Nodes are split into square tiles that are decided
+     * in parallel, and the moves between them are resolved when the tick is committed, so the result is the same
+     * as ticking on one thread.
+     * @param threads the number of threads, 1 to tick on the calling thread
+     */
+    public void setTickThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed to tick");
+        }
+        if (tickPool != null) {
+            tickPool.shutdown();
+            tickPool = null;
+        }
+        tickThreads = threads;
+        if (threads > 1) {
+            tickPool = new ForkJoinPool(threads);
+        }
+    }
+
+    public int getTickThreads() {
+        return tickThreads;
+    }
+
+    /**
+     * Sets the size of the tiles nodes are split into for parallel ticks.
+     * @param tileSize the number of cells along each side of a tile
+     */
+    public void setTickTileSize(int tileSize) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tiles must be at least one cell across");
+        }
+        this.tileSize = tileSize;
+        tileOf = null;
+    }
+
+    public int getTickTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Sets whether ticks are event driven. When they are, only nodes with timers running or robots ready to move
+     * decide, and a robot moving along an edge wakes its node on the tick it arrives rather than the node deciding
+     * every tick until then. Otherwise every node decides every tick. Both give the same result.
+     * @param eventDrivenTicks whether ticks are event driven
+     */
+    public void setEventDrivenTicks(boolean eventDrivenTicks) {
+        this.eventDrivenTicks = eventDrivenTicks;
+    }
+
+    public boolean isEventDrivenTicks() {
+        return eventDrivenTicks;
+    }
+
+    /**
+     * Sets whether each tick is measured. Measuring adds a little overhead to every tick and to every path search.
+     * Allocated bytes are only those of the thread calling tick, not of threads deciding in parallel.
+     * @param metricsEnabled whether to measure ticks
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+        pathFinder.setCountingSearches(metricsEnabled);
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * Gets the measurements of the last tick.
+     * @return the metrics, or null if metrics were not enabled for the last tick
+     */
+    public TickMetrics getLastTickMetrics() {
+        return lastTickMetrics;
+    }
+
     public boolean toggleNodeEnabled(int x, int y) {
-        for (GraphNode<Integer,N> node : nodes.values()) {
-            if (node.getX() == x && node.getY() == y) {
-                node.setBlocked(!node.isBlocked());
-                return true;
-            }
+        GraphNode<Integer,N> node = getNodeByCoordinates(x, y);
+        if (node == null) {
+            return false;
         }
-        return false;
+        node.setBlocked(!node.isBlocked());
+        return true;
     }
 
     /**
@@ -104,47 +467,467 @@ public class Graph<N> {
      * @param edgeWeight the weight of the edge
      */
     public void addUnidirectionalEdge(N fromNodeId, N toNodeId, int edgeWeight) {
-        GraphNode<Integer,N> fromNode = nodes.get(fromNodeId);
-        GraphNode<Integer,N> toNode = nodes.get(toNodeId);
-        if (fromNode != null && toNode != null) {
-            fromNode.addNeighbour(new ConnectedNode<>(toNode, edgeWeight));
-        } else {
+        addEdgeBetween(indexById.indexOf(fromNodeId), indexById.indexOf(toNodeId), edgeWeight);
+    }
+
+    /**
+     * Adds a unidirectional edge between nodes with int IDs, such as the IDs of generated maps, without boxing them.
+     * @param fromNodeId the ID of the node the edge is from
+     * @param toNodeId the ID of the node the edge is to
+     * @param edgeWeight the weight of the edge
+     */
+    public void addUnidirectionalEdge(int fromNodeId, int toNodeId, int edgeWeight) {
+        addEdgeBetween(indexById.indexOf(fromNodeId), indexById.indexOf(toNodeId), edgeWeight);
+    }
+
+    private void addEdgeBetween(int from, int to, int edgeWeight) {
+        if (from < 0 || to < 0) {
             throw new IllegalArgumentException("One or both node IDs not found in graph");
         }
+        nodesByIndex.get(from).addNeighbour(new ConnectedNode<>(nodesByIndex.get(to), edgeWeight));
     }
 
     // During gameplay
     /**
      * Progress all robot movements in the graph by one tick.
+     * The tick runs in two phases so that its result does not depend on the order nodes are visited in:
+     * every node first decides against the state at the start of the tick, then the moves are committed,
+     * with robots competing for the last space in a node resolved in a fixed order.
+     * Only nodes with timers running or robots ready to move decide, unless event driven ticks are turned off;
+     * the rest sleep until a robot moving into them arrives or an incident blocks them.
      */
     public void tick() {
-        GraphNode<Integer,N> endNodeR = null; // node for the robot to end at
-
-        for (GraphNode<Integer,N> node : nodes.values()) {
-            node.tick();
-            // Randomly decide to spawn a robot at this node or at the end
-            if (Math.random() < PROBABILITY_ROBOT_SPAWN_ON_TILE && node.getTileType() == NodeType.HOUSE && spawnRobots) {
-                if (endNodeR == null) {
-                    endNodeR = node;
-                } else { // end node determined from before, use the current node as the start node
-                    Robot<Integer,N> robot = new Robot<>(robotCounter++, endNodeR.getNodeId());
-                    node.addOccupier(new RobotMovement<>(robot, 1, node.getX(), node.getY()));
-                    //System.out.println("Spawned new robot "+robot.robotID+" at node "+node.getNodeId()+" with destination "+endNodeR.getNodeId());
-                    endNodeR = null; // reset for next spawn
-                    onRobotSpawn.run();
+        boolean measuring = metricsEnabled;
+        long allocatedAtStart = measuring ? allocatedBytes() : 0;
+        long searchesAtStart = measuring ? pathFinder.getSearchCount() : 0;
+        long expandedAtStart = measuring ? pathFinder.getNodesExpanded() : 0;
+        long searchNanosAtStart = measuring ? pathFinder.getSearchNanos() : 0;
+        long start = measuring ? System.nanoTime() : 0;
+
+        tickCount++;
+        robots.tick = tickCount;
+        pathFinder.advanceTick();
+
+        int[] due = eventDrivenTicks ? scheduler.advance() : scheduler.advanceAll(nodesByIndex.size());
+        int dueCount = scheduler.getDueCount();
+        moves.clear();
+        if (tickPool == null) {
+            for (int i = 0; i < dueCount; i++) {
+                nodesByIndex.get(due[i]).decide(moves);
+            }
+        } else {
+            decideInParallel(due, dueCount);
+        }
+        commit(moves, due, dueCount);
+        long moved = measuring ? System.nanoTime() : 0;
+
+        spawnRobots();
+
+        if (measuring) {
+            long end = System.nanoTime();
+            long allocated = allocatedAtStart < 0 ? -1 : allocatedBytes() - allocatedAtStart;
+            lastTickMetrics = new TickMetrics(tickCount, end - start, moved - start, end - moved,
+                pathFinder.getSearchNanos() - searchNanosAtStart, pathFinder.getSearchCount() - searchesAtStart,
+                pathFinder.getNodesExpanded() - expandedAtStart, moves.queueEvents, moves.blockEvents, allocated, robots.size(), dueCount,
+                moves.incidents);
+        } else {
+            lastTickMetrics = null;
+        }
+    }
+
+    /**
+     * Gets the bytes allocated so far by the calling thread.
+     * @return the allocated bytes, or -1 if the JVM cannot measure them
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Runs the decide phase on the tick pool, one task per tile with nodes to decide and its own move buffer, then
+     * gathers the buffers in tile order. The commit puts moves and arrivals in a canonical order, so the gathering
+     * order does not change the result.
+     * @param due the nodes deciding this tick, in index order
+     * @param dueCount the number of nodes deciding
+     */
+    private void decideInParallel(int[] due, int dueCount) {
+        if (tileOf == null) {
+            buildTiles();
+        }
+        // group the nodes by tile, keeping index order within each tile
+        Arrays.fill(tileFill, 0);
+        for (int i = 0; i < dueCount; i++) {
+            tileFill[tileOf[due[i]]]++;
+        }
+        busyTiles = 0;
+        int start = 0;
+        for (int t = 0; t < tileCount; t++) {
+            int count = tileFill[t];
+            if (count > 0) {
+                if (tileStarts.length < busyTiles + 2) {
+                    tileStarts = Arrays.copyOf(tileStarts, Math.max(busyTiles + 2, tileStarts.length * 2));
                 }
+                tileStarts[busyTiles++] = start;
+                tileFill[t] = start;
+                start += count;
             }
         }
+        tileStarts[busyTiles] = start;
+        if (tileNodes.length < dueCount) {
+            tileNodes = new int[Math.max(dueCount, tileNodes.length * 2)];
+        }
+        for (int i = 0; i < dueCount; i++) {
+            tileNodes[tileFill[tileOf[due[i]]]++] = due[i];
+        }
+        while (tileMoves.size() < busyTiles) {
+            tileMoves.add(new MoveBuffer());
+        }
+
+        tickPool.invoke(new DecideTiles(0, busyTiles));
+        for (int t = 0; t < busyTiles; t++) {
+            moves.addAll(tileMoves.get(t));
+        }
+    }
+
+    /**
+     * Splits the grid into square tiles of tileSize cells, so that each task mostly touches nearby memory.
+     * Nodes outside the grid go into the nearest tile.
+     */
+    private void buildTiles() {
+        int tilesX = Math.max(1, (gridWidth + tileSize - 1) / tileSize);
+        int tilesY = Math.max(1, (gridHeight + tileSize - 1) / tileSize);
+        tileOf = new int[nodesByIndex.size()];
+        for (int i = 0; i < nodesByIndex.size(); i++) {
+            GraphNode<Integer,N> node = nodesByIndex.get(i);
+            int tileX = Math.min(tilesX - 1, Math.max(0, Math.floorDiv(node.getX(), tileSize)));
+            int tileY = Math.min(tilesY - 1, Math.max(0, Math.floorDiv(node.getY(), tileSize)));
+            tileOf[i] = tileX + tileY * tilesX;
+        }
+        tileCount = tilesX * tilesY;
+        tileFill = new int[tileCount];
+    }
+
+    /**
+     * Decides a range of busy tiles, splitting it in half until a single tile is left.
+     */
+    private class DecideTiles extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        DecideTiles(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new DecideTiles(from, middle), new DecideTiles(middle, to));
+                return;
+            }
+            if (to == from) {
+                return;
+            }
+            MoveBuffer buffer = tileMoves.get(from);
+            buffer.clear();
+            for (int i = tileStarts[from]; i < tileStarts[from + 1]; i++) {
+                nodesByIndex.get(tileNodes[i]).decide(buffer);
+            }
+        }
+    }
+
+    /**
+     * Applies the decisions made by every node: the pending node state becomes current, robots move where there
+     * is room, and arrivals are reported. When more robots ask to enter a node than it has room for, the requests
+     * are ordered by source node and a random rotation drawn from the target node's stream picks the winners.
+     * Incidents then block nodes, and nodes that decided are woken for the next tick or put to sleep.
+     * @param moves the decisions of every node
+     * @param due the nodes that decided this tick
+     * @param dueCount the number of nodes that decided
+     */
+    private void commit(MoveBuffer moves, int[] due, int dueCount) {
+        nodeState.swapPending();
+        int[] occupancyAtStart = nodeState.occupancy; // occupancy is only synced at the end, so this is what the nodes decided against
+
+        int moveCount = moves.moveCount;
+        if (moveOrder.length < moveCount) {
+            moveOrder = new long[Math.max(moveCount, moveOrder.length * 2)];
+        }
+        for (int i = 0; i < moveCount; i++) {
+            moveOrder[i] = ((long) moves.targets[i] << 32) | i;
+        }
+        Arrays.sort(moveOrder, 0, moveCount);
+
+        int groupStart = 0;
+        while (groupStart < moveCount) {
+            int target = (int) (moveOrder[groupStart] >>> 32);
+            int groupEnd = groupStart + 1;
+            while (groupEnd < moveCount && (int) (moveOrder[groupEnd] >>> 32) == target) {
+                groupEnd++;
+            }
+            sortGroupBySource(moves, groupStart, groupEnd);
+
+            GraphNode<Integer,N> targetNode = nodesByIndex.get(target);
+            int contenders = groupEnd - groupStart;
+            int room = targetNode.getMaxOccupiers() - occupancyAtStart[target];
+            int first = contenders > room ? SplitMix.nextInt(nodeState.randomState, target, contenders) : 0;
+            for (int j = 0; j < contenders; j++) {
+                int move = (int) moveOrder[groupStart + (first + j) % contenders];
+                GraphNode<Integer,N> source = nodesByIndex.get(moves.sources[move]);
+                if (j < room) {
+                    targetNode.acceptMove(moves.robots[move], moves.weights[move], source.getX(), source.getY());
+                } else {
+                    moves.queueEvents++;
+                    if (source.rejectMove(moves.robots[move])) moves.blockEvents++;
+                }
+            }
+            groupStart = groupEnd;
+        }
+
+        int arrivalCount = moves.arrivalCount;
+        if (arrivalOrder.length < arrivalCount) {
+            arrivalOrder = new long[Math.max(arrivalCount, arrivalOrder.length * 2)];
+        }
+        for (int i = 0; i < arrivalCount; i++) {
+            arrivalOrder[i] = ((long) moves.arrivalNodes[i] << 32) | i;
+        }
+        Arrays.sort(arrivalOrder, 0, arrivalCount);
+        for (int i = 0; i < arrivalCount; i++) {
+            int arrival = (int) arrivalOrder[i];
+            nodesByIndex.get(moves.arrivalNodes[arrival]).finishRobot(moves.arrivals[arrival]);
+            robots.free(moves.arrivals[arrival]);
+        }
+        for (int i = 0; i < moves.removalCount; i++) {
+            robots.free(moves.removals[i]);
+        }
+
+        blockIncidentNodes(moves);
+
+        // only nodes that decided, nodes robots moved into and nodes incidents blocked can have changed
+        for (int i = 0; i < moveCount; i++) {
+            nodesByIndex.get(moves.targets[i]).syncOccupancy();
+            pathFinder.costChanged(moves.targets[i]);
+        }
+        for (int i = 0; i < dueCount; i++) {
+            GraphNode<Integer,N> node = nodesByIndex.get(due[i]);
+            node.syncOccupancy();
+            node.scheduleNext();
+        }
+        if (eventDrivenTicks) {
+            for (int i = 0; i < dueCount; i++) {
+                pathFinder.costChanged(due[i]);
+            }
+            for (int i = 0; i < incidents.getDrawnCount(); i++) {
+                pathFinder.costChanged(incidents.getDrawnNode(i));
+            }
+        } else {
+            pathFinder.costsChanged();
+        }
+    }
+
+    /**
+     * Blocks the nodes the incident scheduler draws for this tick, unless they are already blocked, and logs them.
+     * A blocked node wakes for the next tick, so its pending state catches up with the block.
+     */
+    private void blockIncidentNodes(MoveBuffer moves) {
+        incidents.draw();
+        int[] blockedTicks = nodeState.blockedTicks;
+        for (int i = 0; i < incidents.getDrawnCount(); i++) {
+            int index = incidents.getDrawnNode(i);
+            int ticks = incidents.getDrawnTicks(i);
+            if (blockedTicks[index] > 0 || ticks == 0) {
+                continue;
+            }
+            blockedTicks[index] = ticks;
+            scheduler.wake(index);
+            moves.blockEvents++;
+            moves.incidents++;
+            GraphNode<Integer,N> node = nodesByIndex.get(index);
+            incidents.record(new Incident(tickCount, index, node.getX(), node.getY(), node.getTileType(), ticks));
+        }
+    }
+
+    /**
+     * Insertion sorts one group of move requests for the same target by source node index, keeping the decide
+     * order for requests from the same source. Groups are tiny, at most the number of incoming edges.
+     */
+    private void sortGroupBySource(MoveBuffer moves, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            long key = moveOrder[i];
+            int source = moves.sources[(int) key];
+            int j = i - 1;
+            while (j >= from && moves.sources[(int) moveOrder[j]] > source) {
+                moveOrder[j + 1] = moveOrder[j];
+                j--;
+            }
+            moveOrder[j + 1] = key;
+        }
+    }
+
+    /**
+     * Starts the trips the demand model draws for this tick, each robot waiting one tick at its origin house.
+     */
+    private void spawnRobots() {
+        if (!spawnRobots) {
+            return;
+        }
+        demand.draw(tickCount);
+        for (int i = 0; i < demand.getDrawnCount(); i++) {
+            GraphNode<Integer,N> origin = nodesByIndex.get(demand.getDrawnOrigin(i));
+            while (robots.slotOf(robotCounter) >= 0) robotCounter++; // skip IDs taken by robots added by hand
+            int robot = robots.allocate(robotCounter++, demand.getDrawnDestination(i), tickCount);
+            robots.setMovement(robot, origin.getIndex(), 1, origin.getX(), origin.getY());
+            origin.addRobot(robot);
+            onRobotSpawn.run();
+        }
     }
 
     // Getters
 
     /**
-     * Gets the nodes in the graph.
-     * @return the nodes in the graph
+     * Gets the nodes in the graph, in index order.
+     * @return a read only view of the nodes in the graph
+     */
+    public List<GraphNode<Integer, N>> getNodes() {
+        return Collections.unmodifiableList(nodesByIndex);
+    }
+
+    /**
+     * Gets the number of nodes in the graph, which is also one more than the largest node index.
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return nodesByIndex.size();
+    }
+
+    /**
+     * Gets a node by its dense index.
+     * @param index the index of the node, between 0 and getNodeCount() - 1
+     * @return the node
+     */
+    public GraphNode<Integer,N> getNodeByIndex(int index) {
+        return nodesByIndex.get(index);
+    }
+
+    /**
+     * Gets a compressed-sparse-row view of the graph's edges over node indices, rebuilt after edges are added.
+     * @return the topology
+     */
+    public GraphTopology getTopology() {
+        return pathFinder.getTopology();
+    }
+
+    /**
+     * Finds the strongly connected components of the graph's edges, ignoring blockages and congestion.
+     * @return the components, worked out afresh on each call
+     */
+    public StronglyConnectedComponents getStronglyConnectedComponents() {
+        return StronglyConnectedComponents.of(getTopology());
+    }
+
+    /**
+     * Gets the scheduler of random incidents, to set how often each type of node is blocked and to read the log of
+     * recent incidents.
+     * @return the incident scheduler
+     */
+    public IncidentScheduler getIncidents() {
+        return incidents;
+    }
+
+    /**
+     * Gets the demand model, to set how many robots start trips on each tick and between which parts of the map.
+     * @return the demand model
+     */
+    public DemandModel getDemand() {
+        return demand;
+    }
+
+    /**
+     * Gets the dynamic state of all nodes (blocked ticks, occupancy, queue time), indexed like the topology.
+     * @return the node state arrays
+     */
+    public NodeState getNodeState() {
+        return nodeState;
+    }
+
+    /**
+     * Gets the number of ticks run so far.
+     * @return the tick count
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Gets the node a robot currently occupies, including while it is still moving into it.
+     * @param robotId the robot's ID
+     * @return the node's index, or -1 if the robot is not in the graph
+     */
+    public int getRobotNodeIndex(int robotId) {
+        int robot = robots.slotOf(robotId);
+        return robot < 0 ? -1 : robots.nodes[robot];
+    }
+
+    /**
+     * Gets the node a robot currently occupies, including while it is still moving into it.
+     * @param robotId the robot's ID
+     * @return the node, or null if the robot is not in the graph
+     */
+    public GraphNode<Integer,N> getRobotNode(int robotId) {
+        int index = getRobotNodeIndex(robotId);
+        return index < 0 ? null : nodesByIndex.get(index);
+    }
+
+    /**
+     * Gets a copy of a robot's current movement into the node it occupies.
+     * @param robotId the robot's ID
+     * @return the movement, or null if the robot is not in the graph
+     */
+    public RobotMovement<Integer,N> getRobotMovement(int robotId) {
+        int robot = robots.slotOf(robotId);
+        return robot < 0 ? null : nodesByIndex.get(robots.nodes[robot]).movementOf(robot);
+    }
+
+    /**
+     * Gets the store holding every robot in the graph, for reading robots in bulk without copying them.
+     * @return the robot store
+     */
+    public RobotStore getRobotStore() {
+        return robots;
+    }
+
+    /**
+     * Gets the number of robots currently in the graph.
+     * @return the number of robots
+     */
+    public int getRobotCount() {
+        return robots.size();
+    }
+
+    /**
+     * Gets the number of robots that have reached their destination.
+     * @return the number of completed trips
+     */
+    public long getCompletedTrips() {
+        return completedTrips;
+    }
+
+    /**
+     * Gets the mean number of ticks between a robot spawning and reaching its destination.
+     * @return the mean trip time in ticks, or 0 if no trips have completed
      */
-    public HashMap<N, GraphNode<Integer, N>> getNodes() {
-        return nodes;
+    public double getMeanTripTicks() {
+        return completedTrips == 0 ? 0 : totalTripTicks / (double) completedTrips;
     }
 
     public int getGridWidth() {
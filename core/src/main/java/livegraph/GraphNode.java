@@ -1,25 +1,33 @@
 package livegraph;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.function.IntConsumer;
 
 public class GraphNode<R,N> {
     private final N nodeId;
     private int x;
     private int y;
     private NodeType tileType;
-    private List<ConnectedNode<R, N>> neighbours; // adjacent OUTGOING nodes. this class does not store incoming edges.
-    private List<RobotMovement<R, N>> occupiers;
+    private List<ConnectedNode<R, N>> neighbours; // adjacent OUTGOING nodes
+    private final List<ConnectedNode<R, N>> incoming = new ArrayList<>(); // adjacent INCOMING nodes, kept in step with the neighbours of other nodes
+    private List<RobotMovement<R, N>> occupiers; // robots added before the node joins a graph, which then moves them into its RobotStore
+    private int occupantCount = 0; // robots on this node in the graph's RobotStore, published to the state arrays when a tick is committed
     private int maxOccupiers = 1;
-    private int disabledForGoes = 0; // number of ticks this node is disabled for, no robots can enter, but robots can leave
     private double CELL_BLOCK_PROBABILITY_QUEUE = 0.002; // Probability of blocking a cell during a queue
-    private double CELL_RANDOMLY_BLOCK_PROBABILITY = 0.000005; // Probability of randomly blocking this cell each tick
     private int CELL_STUCK_BLOCK_MAX_TICKS = 100; // Max ticks to block when stuck in congestion
     private int waitToMove = 0; // Goes to wait before moving due to congestion / no available path
     private Runnable onRobotFinish = () -> {};
-    private int queueTime = 0; // the queue time spent at this node
+    private IntConsumer onRobotArrived = robot -> {}; // set by the owning graph to record trip statistics, given the robot's slot
+    // disabledForGoes (ticks no robots can enter, but robots can leave), occupancy and queueTime live in the
+    // state arrays at index. Until the node is added to a graph it reads them from a shared empty store, and copies
+    // that into a single-slot store of its own the first time it writes them, so building a map allocates none.
+    private static final NodeState DETACHED = new NodeState(1); // never written
+    private NodeState state = DETACHED;
+    private int index = 0;
+    private PathFinder<R,N> pathFinder; // shared search engine of the owning graph, null until added to one
+    private RobotStore robots; // the owning graph's robots, null until added to one
+    private TickScheduler scheduler; // wakes the node on the ticks it has something to do, null until added to a graph
 
     public GraphNode(N nodeId, int x, int y, NodeType tileType, List<ConnectedNode<R,N>> neighbours, List<RobotMovement<R,N>> occupiers, Runnable onRobotFinish) {
         this.nodeId = nodeId;
@@ -29,124 +37,265 @@ public class GraphNode<R,N> {
         this.neighbours = neighbours;
         this.occupiers = occupiers;
         this.onRobotFinish = onRobotFinish;
+        if (!occupiers.isEmpty()) {
+            writableState().occupancy[index] = occupiers.size();
+        }
+        for (ConnectedNode<R,N> neighbour : neighbours) {
+            neighbour.node.incoming.add(new ConnectedNode<>(this, neighbour.edgeWeight));
+        }
     }
 
     /**
-     * Progress all robot movements occupying this node by one tick.
+     * The decide phase of a tick: count down this node's timers and decide where robots that have fully moved
+     * into it move next. Decisions are made against the state at the start of the tick, which
+     * this does not change: the node's next blocked ticks and queue time go to the pending state arrays,
+     * and moves to other nodes and arrivals are recorded in the buffer for the graph to commit.
+     * Only this node's own fields and the slots of its own robots are written, so nodes can decide in any order or in parallel.
+     * Robots moving into the node are not stepped along their edge, as their arrival tick is fixed when they set off;
+     * deciding a node with no timers running and no robots ready to move does nothing. Random blocks come from the
+     * graph's {@link IncidentScheduler}.
+     * @param moves the buffer to record move requests and arrivals in
      */
-    public void tick() {
-        if (this.disabledForGoes > 0) {
-            this.disabledForGoes--;
-            //System.out.println("Node "+this.nodeId+" is disabled for "+this.disabledForGoes+" more ticks, no robots can enter.");
-        }
-
-        // Randomly block this cell occasionally
-        if (tileType == NodeType.ROAD && !isBlocked() && Math.random() < CELL_RANDOMLY_BLOCK_PROBABILITY) {
-            this.disabledForGoes = (int) (Math.random() * 1000); // Block this node for 1-5000 ticks randomly
-            //System.out.println("Node " + this.nodeId + " is now randomly blocked for " + this.disabledForGoes + " ticks.");
+    void decide(MoveBuffer moves) {
+        int[] blockedTicks = state.blockedTicks;
+        int[] occupancy = state.occupancy;
+        int blocked = blockedTicks[index];
+        int queue = state.queueTime[index];
+
+        if (blocked > 0) {
+            blocked--;
+            //System.out.println("Node "+this.nodeId+" is disabled for "+blocked+" more ticks, no robots can enter.");
         }
 
+        long tick = robots.tick;
+        long[] arrivalTicks = robots.arrivalTicks;
         if (waitToMove > 0) {
             waitToMove--;
             //System.out.println("Node "+this.nodeId+" is waiting to move for "+waitToMove+" more ticks due to congestion.");
+            for (int robot = state.firstOccupant[index]; robot >= 0; robot = robots.next[robot]) {
+                if (arrivalTicks[robot] >= tick) arrivalTicks[robot]++; // robots still moving in are held back too
+            }
+            state.pendingBlockedTicks[index] = blocked;
+            state.pendingQueueTime[index] = queue;
             return; // Do not process robot movements this tick
         }
 
-        if (queueTime > 0) queueTime --; // decrement queueTime. If we're queueing, we'll increment it by 2 to counteract this
-
-        List<RobotMovement<R,N>> newOccupiers = new ArrayList<>(); // the occupiers at this node after this tick, during which some robots may leave
-        for (RobotMovement<R, N> movement : occupiers) {
-            if (movement.readyToMoveNodes() && movement.getRobot().destinationNodeId.equals(this.nodeId)) {
+        if (queue > 0) queue--; // decrement queueTime. If we're queueing, we'll increment it by 2 to counteract this
+
+        GraphTopology topology = pathFinder.getTopology();
+        int[] destinations = robots.destinations;
+        int[] next = robots.next;
+        // the robots at this node after this tick, during which some robots may leave, relinked in place
+        int first = -1;
+        int last = -1;
+        int count = 0;
+        for (int robot = state.firstOccupant[index], following; robot >= 0; robot = following) {
+            following = next[robot];
+            boolean stays = true;
+            boolean ready = arrivalTicks[robot] < tick; // fully moved into this node by the end of the last tick
+            if (ready && destinations[robot] == index) {
                 // Robot has reached its destination, so it leaves the graph
-                //System.out.println("Robot "+movement.getRobot().robotID+" has reached its destination at node "+this.nodeId);
-                onRobotFinish.run();
-                continue; // Do not add to newOccupiers
+                //System.out.println("Robot "+robots.ids[robot]+" has reached its destination at node "+this.nodeId);
+                moves.addArrival(index, robot);
+                continue; // Do not keep it on this node
             }
-            else if (movement.readyToMoveNodes()) {
+            else if (ready) {
                 // Robot has fully moved into this node, so we can decide its next move
-                GraphNode<R,N> nextNode = this.getNextNodeOnPath(movement.getRobot().destinationNodeId);
-                if (nextNode != null) {
+                int nextNode = destinations[robot] < 0 ? -1 : pathFinder.route(index, destinations[robot]);
+                if (nextNode >= 0) {
                     // Move robot to next node
-                    for (ConnectedNode<R,N> neighbour : this.getNeighbours()) {
-                        if (neighbour.node.nodeId.equals(nextNode.nodeId)) {
-                            // Found the edge to the next node
-                            if (nextNode.occupiers.size() >= nextNode.getMaxOccupiers() || nextNode.isBlocked()) {
-                                // Next node is full, robot stays at this node
-                                //System.out.println("Robot " + movement.getRobot().robotID + " at node " + this.nodeId + " cannot move to node " + nextNode.nodeId + " as it is full, staying put.");
-                                newOccupiers.add(movement);
-                                if (Math.random() < CELL_BLOCK_PROBABILITY_QUEUE) { // DISABLE <--- disable this if you want to demo traffic jams
-                                    this.disabledForGoes = (int) (Math.random() * CELL_STUCK_BLOCK_MAX_TICKS); // Block this node for 1-10 ticks due to congestion
-                                    //System.out.println("Node " + this.nodeId + " is now blocked for " + this.disabledForGoes + " ticks due to congestion.");
-                                }
-                                queueTime+=2;
-                                break;
-                            } else { // Move to next node
-                                RobotMovement<R,N> newMovement = new RobotMovement<>(movement.getRobot(), neighbour.edgeWeight, this.x, this.y);
-                                nextNode.occupiers.add(newMovement);
-                                break;
-                            }
+                    if (occupancy[nextNode] >= pathFinder.nodeAt(nextNode).getMaxOccupiers() || blockedTicks[nextNode] > 0) {
+                        // Next node is full, robot stays at this node
+                        //System.out.println("Robot " + robots.ids[robot] + " at node " + this.nodeId + " cannot move to node " + nextNode + " as it is full, staying put.");
+                        if (nextRandom() < CELL_BLOCK_PROBABILITY_QUEUE) { // DISABLE <--- disable this if you want to demo traffic jams
+                            blocked = (int) (nextRandom() * CELL_STUCK_BLOCK_MAX_TICKS); // Block this node for 1-10 ticks due to congestion
+                            //System.out.println("Node " + this.nodeId + " is now blocked for " + blocked + " ticks due to congestion.");
+                            moves.blockEvents++;
                         }
+                        queue+=2;
+                        moves.queueEvents++;
+                    } else { // Ask to move to next node, the graph decides if there is room once every node has decided
+                        moves.addMove(index, nextNode, topology.getEdgeWeight(index, nextNode), robot);
+                        stays = false;
                     }
                 } else {
                     // No path found, robot stays at this node
-                    //System.out.println("Robot "+movement.getRobot().robotID+" at node "+this.nodeId+" has no path to destination "+movement.getRobot().destinationNodeId+", staying put.");
-                    if (tileType != NodeType.HOUSE) { // Delete if spawn-trapped (may be an error in graph generation)
-                        newOccupiers.add(movement);
-                        queueTime += 2;
-                        waitToMove = (int) (Math.random()*20);
+                    //System.out.println("Robot "+robots.ids[robot]+" at node "+this.nodeId+" has no path to its destination, staying put.");
+                    if (tileType != NodeType.HOUSE) { // Delete if spawn-trapped (generated maps are strongly connected, but hand-built ones may not be)
+                        queue += 2;
+                        waitToMove = (int) (nextRandom()*20);
+                        moves.queueEvents++;
+                    } else {
+                        moves.addRemoval(robot);
+                        stays = false;
                     }
                 }
-            } else {
-                // Robot is still moving into this node, stays here
-                newOccupiers.add(movement);
             }
+            // otherwise the robot is still moving into this node, and stays here
 
-            movement.tick();
-
+            if (stays) {
+                next[robot] = -1;
+                if (last < 0) first = robot; else next[last] = robot;
+                last = robot;
+                count++;
+            }
         }
 
-        this.occupiers = newOccupiers;
+        state.firstOccupant[index] = first;
+        state.lastOccupant[index] = last;
+        occupantCount = count; // occupancy is updated when the graph commits the tick
+        state.pendingBlockedTicks[index] = blocked;
+        state.pendingQueueTime[index] = queue;
     }
 
-    // Gets the next nodeid on the shortest path to the destination
-    public GraphNode<R,N> getNextNodeOnPath(N destinationNodeId) { // gets the next node on the shortest path to the destination
-        PriorityQueue<PathNode<R, N>> pathsToExplore = new PriorityQueue<>((path1, path2) -> Integer.compare(path1.cumulativeWeight, path2.cumulativeWeight) );
+    /**
+     * Once a tick this node decided on is committed, wakes it for the next tick if it still has timers running or
+     * robots ready to move. Otherwise it sleeps until its first robot moving in arrives, with its pending state set to
+     * its current state so that the ticks it sleeps through leave it unchanged.
+     */
+    void scheduleNext() {
+        long tick = robots.tick;
+        boolean busy = waitToMove > 0 || state.blockedTicks[index] > 0 || state.queueTime[index] > 0;
+        long firstArrival = Long.MAX_VALUE;
+        for (int robot = state.firstOccupant[index]; robot >= 0 && !busy; robot = robots.next[robot]) {
+            long arrival = robots.arrivalTicks[robot];
+            busy = arrival <= tick;
+            firstArrival = Math.min(firstArrival, arrival);
+        }
+        if (busy) {
+            scheduler.wake(index);
+            return;
+        }
+        state.pendingBlockedTicks[index] = state.blockedTicks[index];
+        state.pendingQueueTime[index] = state.queueTime[index];
+        if (firstArrival != Long.MAX_VALUE) {
+            scheduler.wakeAt(index, firstArrival + 1);
+        }
+    }
 
-        pathsToExplore.add(new PathNode<>(new ArrayList<>(List.of(this)), 0));
+    /**
+     * A robot that asked to move out of this node in the decide phase could not, because another robot took the
+     * last space in the next node. It stays and queues here as if the next node had been full.
+     * @param robot the robot's slot
+     * @return true if the congestion blocked this node
+     */
+    boolean rejectMove(int robot) {
+        appendOccupant(robot);
+        state.queueTime[index] += 2;
+        if (nextRandom() < CELL_BLOCK_PROBABILITY_QUEUE) {
+            state.blockedTicks[index] = (int) (nextRandom() * CELL_STUCK_BLOCK_MAX_TICKS); // Block this node for 1-10 ticks due to congestion
+            return true;
+        }
+        return false;
+    }
 
-        HashSet<N> visitedNodeIds = new HashSet<>();
+    /**
+     * Accepts a robot moving in from another node.
+     * @param robot the robot's slot
+     * @param edgeWeight the weight of the edge it moves along
+     * @param fromX the x coordinate of the node it moves from
+     * @param fromY the y coordinate of the node it moves from
+     */
+    void acceptMove(int robot, int edgeWeight, int fromX, int fromY) {
+        robots.setMovement(robot, index, edgeWeight, fromX, fromY);
+        appendOccupant(robot);
+        scheduler.wakeAt(index, robots.arrivalTicks[robot] + 1);
+    }
 
-        while (!pathsToExplore.isEmpty()) {
-            PathNode<R,N> currentPath = pathsToExplore.poll();
+    /**
+     * Places a newly spawned robot on this node, already positioned by the caller.
+     * @param robot the robot's slot
+     */
+    void addRobot(int robot) {
+        appendOccupant(robot);
+        scheduler.wakeAt(index, robots.arrivalTicks[robot] + 1);
+        state.occupancy[index] = occupantCount;
+        pathFinder.costChanged(index);
+    }
 
-            GraphNode<R,N> currentNode = currentPath.path.get(currentPath.path.size() - 1);
-            visitedNodeIds.add(currentNode.nodeId);
+    private void appendOccupant(int robot) {
+        robots.next[robot] = -1;
+        int last = state.lastOccupant[index];
+        if (last < 0) state.firstOccupant[index] = robot; else robots.next[last] = robot;
+        state.lastOccupant[index] = robot;
+        occupantCount++;
+    }
 
-            // If we reached the destination, return the next node in the path
-            if (currentNode.nodeId.equals(destinationNodeId)) {
-                // System.out.println("Length of path found: " + currentPath.path.size() + " with total weight: " + currentPath.cumulativeWeight);
-//                for (GraphNode<R,N> node : currentPath.path) {
-//                    System.out.print(node.nodeId + " -> ");
-//                }
-//                System.out.println("(END)");
-                if (currentPath.path.size() < 2) return null; // Already at destination
+    /**
+     * Sets the occupancy in the state arrays from the occupant list, once the graph has committed a tick.
+     */
+    void syncOccupancy() {
+        state.occupancy[index] = occupantCount;
+    }
 
-                return currentPath.path.get(1); // Return the next node after the start node
-            }
+    void finishRobot(int robot) {
+        onRobotFinish.run();
+        onRobotArrived.accept(robot);
+    }
 
-            // Explore neighbours
-            for (ConnectedNode<R,N> neighbour : currentNode.getNeighbours()) {
+    /**
+     * Moves the robots added before this node joined its graph into the graph's robot store.
+     * Called by the graph once every node has an index, so that destinations can be resolved.
+     */
+    void adoptDetachedOccupiers() {
+        for (RobotMovement<R,N> movement : occupiers) {
+            adopt(movement);
+        }
+        occupiers.clear();
+        syncOccupancy();
+    }
 
-                if (!visitedNodeIds.contains(neighbour.getNode().getNodeId()) && !neighbour.getNode().isBlocked()) { // Avoid cycles && currentPath.path.stream().noneMatch(node -> node.nodeId.equals(neighbour.node.nodeId))
-                    // System.out.println("Exploring neighbour "+neighbour.node.nodeId+" from current node "+currentNode.nodeId);
-                    PathNode<R,N> newPath = currentPath.addStep(neighbour.node, neighbour.edgeWeight + (neighbour.node.getOccupiers().size() * 10) + neighbour.node.getQueueTime()); // add extra weight for occupiers to avoid congestion
-                    pathsToExplore.add(newPath);
-                }
-            }
+    /**
+     * Releases the robots on this node from the graph's robot store, when the node is replaced.
+     */
+    void releaseRobots() {
+        for (int robot = state.firstOccupant[index], following; robot >= 0; robot = following) {
+            following = robots.next[robot];
+            robots.free(robot);
         }
+        state.firstOccupant[index] = -1;
+        state.lastOccupant[index] = -1;
+        occupantCount = 0;
+    }
 
-        return null; // No path found
+    private void adopt(RobotMovement<R,N> movement) {
+        Robot<R,N> robot = movement.getRobot();
+        if (!(robot.robotID instanceof Integer)) {
+            throw new IllegalArgumentException("Robots in a graph must have Integer IDs, not " + robot.robotID);
+        }
+        int destination = pathFinder.indexOf(robot.destinationNodeId);
+        if (destination < 0) {
+            throw new IllegalArgumentException("Destination node " + robot.destinationNodeId + " of robot " + robot.robotID + " is not in the graph");
+        }
+        int slot = robots.allocate((Integer) robot.robotID, destination, robot.spawnTick);
+        robots.setMovement(slot, index, movement.getTotalEdgeWeight(), movement.getOriginX(), movement.getOriginY());
+        robots.arrivalTicks[slot] = robots.tick + movement.getRemainingProgression();
+        appendOccupant(slot);
+        scheduler.wake(index);
+    }
 
+    /**
+     * Copies a robot in the graph's robot store into a standalone movement.
+     * @param robot the robot's slot
+     * @return the copy
+     */
+    @SuppressWarnings("unchecked")
+    RobotMovement<R,N> movementOf(int robot) {
+        Robot<R,N> copy = new Robot<>((R) Integer.valueOf(robots.ids[robot]), pathFinder.nodeAt(robots.destinations[robot]).getNodeId(), robots.spawnTicks[robot]);
+        return new RobotMovement<>(copy, robots.totalWeight[robot], robots.getRemainingProgression(robot), robots.originX[robot], robots.originY[robot]);
+    }
+
+    /**
+     * Gets the next node on the cheapest path to the destination, weighting edges by congestion.
+     * The node must have been added to a graph.
+     * @param destinationNodeId the ID of the destination node
+     * @return the next node, or null if this is the destination or no path exists
+     */
+    public GraphNode<R,N> getNextNodeOnPath(N destinationNodeId) {
+        if (pathFinder == null) {
+            throw new IllegalStateException("Node " + nodeId + " has not been added to a graph");
+        }
+        return pathFinder.nextHop(this, destinationNodeId);
     }
 
     // Getters
@@ -154,8 +303,36 @@ public class GraphNode<R,N> {
         return this.neighbours;
     }
 
+    /**
+     * Gets the incoming edges of this node, each holding the node the edge comes from.
+     * @return the incoming edges
+     */
+    public List<ConnectedNode<R,N>> getIncoming() {
+        return this.incoming;
+    }
+
+    /**
+     * Gets the robots occupying this node. Once the node is in a graph its robots live in the graph's
+     * {@link RobotStore}, and this returns a new list of copies that do not change the robots if modified.
+     * @return the robots on this node
+     */
     public List<RobotMovement<R,N>> getOccupiers() {
-        return this.occupiers;
+        if (robots == null) {
+            return this.occupiers;
+        }
+        List<RobotMovement<R,N>> copies = new ArrayList<>(occupantCount);
+        for (int robot = state.firstOccupant[index]; robot >= 0; robot = robots.next[robot]) {
+            copies.add(movementOf(robot));
+        }
+        return copies;
+    }
+
+    /**
+     * Gets the number of robots occupying this node, as of the last committed tick.
+     * @return the number of robots
+     */
+    public int getOccupancy() {
+        return robots == null ? occupiers.size() : state.occupancy[index];
     }
 
     public N getNodeId() {
@@ -179,38 +356,120 @@ public class GraphNode<R,N> {
     }
 
     public boolean isBlocked() {
-        return this.disabledForGoes > 0;
+        return state.blockedTicks[index] > 0;
     }
 
     public int getQueueTime() {
-        return queueTime;
+        return state.queueTime[index];
+    }
+
+    /**
+     * Gets the dense index of this node within its graph.
+     * @return the index, or -1 if the node has not been added to a graph
+     */
+    public int getIndex() {
+        return pathFinder == null ? -1 : index;
     }
 
     // Setters
     public void addNeighbour(ConnectedNode<R,N> neighbour) {
         this.neighbours.add(neighbour);
+        neighbour.node.incoming.add(new ConnectedNode<>(this, neighbour.edgeWeight));
+        topologyChanged();
     }
 
     public void setNeighbours(List<ConnectedNode<R,N>> neighbours) {
+        for (ConnectedNode<R,N> neighbour : this.neighbours) {
+            neighbour.node.incoming.removeIf(edge -> edge.node == this);
+        }
         this.neighbours = neighbours;
+        for (ConnectedNode<R,N> neighbour : neighbours) {
+            neighbour.node.incoming.add(new ConnectedNode<>(this, neighbour.edgeWeight));
+        }
+        topologyChanged();
     }
 
+    /**
+     * Adds a robot to this node. Once the node is in a graph, the robot must have an Integer ID not already in
+     * the graph and a destination in the graph; it is copied into the graph's {@link RobotStore}.
+     * @param occupier the robot's movement into this node
+     */
     public void addOccupier(RobotMovement<R,N> occupier) {
-        this.occupiers.add(occupier);
+        if (robots == null) {
+            this.occupiers.add(occupier);
+            writableState().occupancy[index] = occupiers.size();
+            return;
+        }
+        adopt(occupier);
+        state.occupancy[index] = occupantCount;
+        costsChanged();
     }
 
     public void setBlocked(boolean blocked) {
         if (blocked) {
-            this.disabledForGoes = Integer.MAX_VALUE; // Block indefinitely
+            writableState().blockedTicks[index] = Integer.MAX_VALUE; // Block indefinitely
         } else {
-            this.disabledForGoes = 0; // Unblock
+            writableState().blockedTicks[index] = 0; // Unblock
         }
+        if (scheduler != null) scheduler.wake(index);
+        costsChanged();
     }
 
     public void setOnRobotFinish(Runnable onRobotFinish) {
         this.onRobotFinish = onRobotFinish;
     }
 
+    void setOnRobotArrived(IntConsumer onRobotArrived) {
+        this.onRobotArrived = onRobotArrived;
+    }
+
+    /**
+     * Moves this node's dynamic state into its graph's state arrays. Its robots are moved into the graph's robot
+     * store afterwards, by {@link #adoptDetachedOccupiers()}.
+     * @param index the dense index assigned by the graph
+     * @param pathFinder the graph's path finder
+     * @param state the graph's state arrays, already large enough to hold index
+     * @param robots the graph's robot store
+     * @param scheduler the graph's tick scheduler, which wakes the node for its first tick in the graph
+     */
+    void attach(int index, PathFinder<R,N> pathFinder, NodeState state, RobotStore robots, TickScheduler scheduler) {
+        state.copyFrom(this.state, this.index, index);
+        this.state = state;
+        this.index = index;
+        this.pathFinder = pathFinder;
+        this.robots = robots;
+        this.scheduler = scheduler;
+        this.occupantCount = 0;
+        scheduler.wake(index);
+        topologyChanged();
+    }
+
+    /**
+     * @return the state to write to, giving a node not in a graph a store of its own first
+     */
+    private NodeState writableState() {
+        if (state == DETACHED) {
+            state = new NodeState(1);
+        }
+        return state;
+    }
+
+    /**
+     * Draws from this node's own random stream, seeded by its graph.
+     * @return a uniform double in [0, 1)
+     */
+    private double nextRandom() {
+        return SplitMix.nextDouble(state.randomState, index);
+    }
+
+    private void costsChanged() {
+        if (pathFinder != null) pathFinder.costsChanged();
+    }
+
+    private void topologyChanged() {
+        if (pathFinder != null) pathFinder.topologyChanged();
+    }
+
     // Overrides
     @Override
     public String toString() {
@@ -220,25 +479,9 @@ public class GraphNode<R,N> {
                 ", y=" + y +
                 ", tileType=" + tileType +
                 ", neighbours=" + neighbours +
-                ", occupiers=" + occupiers +
+                ", occupiers=" + getOccupiers() +
                 '}';
     }
 
 
 }
-
-class PathNode<R, N> {
-    public final List<GraphNode<R,N>> path;
-    public final int cumulativeWeight;
-
-    public PathNode(List<GraphNode<R,N>> path, int cumulativeWeight) {
-        this.path = path;
-        this.cumulativeWeight = cumulativeWeight;
-    }
-
-    public PathNode<R,N> addStep(GraphNode<R,N> node, int weight) {
-        List<GraphNode<R,N>> newPath = new ArrayList<>(List.copyOf(path));
-        newPath.add(node);
-        return new PathNode<>(newPath, cumulativeWeight + weight);
-    }
-}
@@ -0,0 +1,109 @@
+package livegraph;
+
+import java.util.List;
+
+/**
+ * An immutable compressed-sparse-row snapshot of a graph's edges over dense node indices.
+ * The outgoing edges of node i are targets[offsets[i]] .. targets[offsets[i + 1] - 1] with matching weights,
+ * and the incoming edges are held the same way in reverseOffsets, sources and reverseWeights.
+ */
+public final class GraphTopology {
+    private final int nodeCount;
+    final int[] offsets;
+    final int[] targets;
+    final int[] weights;
+    final int[] reverseOffsets;
+    final int[] sources;
+    final int[] reverseWeights;
+
+    private GraphTopology(int nodeCount, int[] offsets, int[] targets, int[] weights) {
+        this.nodeCount = nodeCount;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+
+        // counting sort of the edges by target gives the reverse adjacency
+        int edgeCount = targets.length;
+        reverseOffsets = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            reverseOffsets[targets[e] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        sources = new int[edgeCount];
+        reverseWeights = new int[edgeCount];
+        int[] fill = new int[nodeCount];
+        for (int from = 0; from < nodeCount; from++) {
+            for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+                int to = targets[e];
+                int slot = reverseOffsets[to] + fill[to]++;
+                sources[slot] = from;
+                reverseWeights[slot] = weights[e];
+            }
+        }
+    }
+
+    /**
+     * Builds a topology from nodes listed by their dense index.
+     * @param nodesByIndex the nodes, where the node at position i has index i
+     * @return the topology
+     */
+    public static GraphTopology build(List<? extends GraphNode<?, ?>> nodesByIndex) {
+        int nodeCount = nodesByIndex.size();
+        int[] offsets = new int[nodeCount + 1];
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] = offsets[i] + nodesByIndex.get(i).getNeighbours().size();
+        }
+        int[] targets = new int[offsets[nodeCount]];
+        int[] weights = new int[offsets[nodeCount]];
+        for (int i = 0; i < nodeCount; i++) {
+            List<? extends ConnectedNode<?, ?>> neighbours = nodesByIndex.get(i).getNeighbours();
+            for (int j = 0; j < neighbours.size(); j++) {
+                ConnectedNode<?, ?> neighbour = neighbours.get(j);
+                int target = neighbour.node.getIndex();
+                if (target < 0 || target >= nodeCount || nodesByIndex.get(target) != neighbour.node) {
+                    throw new IllegalStateException("Node " + neighbour.node.getNodeId() + " is not part of this graph");
+                }
+                targets[offsets[i] + j] = target;
+                weights[offsets[i] + j] = neighbour.edgeWeight;
+            }
+        }
+        return new GraphTopology(nodeCount, offsets, targets, weights);
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Gets the weight of the edge between two nodes.
+     * @param from the index of the node the edge is from
+     * @param to the index of the node the edge is to
+     * @return the edge weight, or -1 if there is no such edge
+     */
+    public int getEdgeWeight(int from, int to) {
+        for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+            if (targets[e] == to) return weights[e];
+        }
+        return -1;
+    }
+
+    // Copies of the arrays, hot loops inside this package read the fields directly
+
+    public int[] getOffsets() {
+        return offsets.clone();
+    }
+
+    public int[] getTargets() {
+        return targets.clone();
+    }
+
+    public int[] getWeights() {
+        return weights.clone();
+    }
+}
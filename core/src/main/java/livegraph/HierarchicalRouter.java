@@ -0,0 +1,442 @@
+package livegraph;
+
+import java.util.Arrays;
+
+/**
+ * Routes between distant nodes over an abstract graph of cluster entrances, in the style of HPA*.
+ * Nodes are grouped into square clusters of clusterSize by clusterSize cells. Generated maps turn each road cell
+ * into a 2x2 block of lanes, so with an even cluster size no block is split between clusters. A node with an edge
+ * in from another cluster is an entry and a node with an edge out to another cluster an exit. The abstract graph
+ * has every edge between clusters, plus an edge from each entry of a cluster to each of its exits costing the
+ * cheapest path between them that stays in the cluster.
+ *
+ * A search first finds the cheapest way from the source to each exit of its cluster, and from each entry of the
+ * destination's cluster to the destination, then runs A* over entries and exits only. Every path between clusters
+ * splits into such pieces, so the route found is a cheapest one, yet a long search settles entrances rather than
+ * every lane cell on the way. A node reached across its cluster is not crossed from again, as the entry it was
+ * reached from already reaches every exit at least as cheaply.
+ *
+ * Within a cluster the paths from entries to exits depend on congestion. The costs from an entry are worked out
+ * when a search first reaches it, and again the next time one does after the entry cost of any node of its cluster
+ * changes, so a search under congestion only pays for the entries it actually settles.
+ *
+ * Searches share working arrays, so only one runs at a time.
+ */
+final class HierarchicalRouter {
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final GraphTopology topology;
+    private final NodeState state;
+    private final int[] nodeX;
+    private final int[] nodeY;
+    private final int heuristicScale; // the A* estimate is the Manhattan distance to the destination times this
+
+    private final int[] clusterOf; // cluster of each node
+    private final int[] entryOffsets; // entries of cluster c are entries[entryOffsets[c] .. entryOffsets[c + 1] - 1]
+    private final int[] entries;
+    private final int[] entrySlot; // position of each node in entries, -1 if it is not an entry
+    private final int[] exitOffsets; // exits of cluster c are exits[exitOffsets[c] .. exitOffsets[c + 1] - 1]
+    private final int[] exits;
+    private final int[] exitSlot; // position of each node among its cluster's exits, -1 if it is not an exit
+    private final int entranceCount; // nodes that are an entry, an exit or both
+    private final int[] rowStart; // costs from entry k to the exits of its cluster start at exitCosts[rowStart[k]]
+    private final int[] exitCosts;
+    private final int[] clusterVersion; // bumped whenever the entry cost of a node in the cluster changes
+    private final int[] rowVersion; // the cluster version each entry's costs were worked out at
+
+    // working state, stamped with epochs so that nothing needs clearing between searches. Searches within one
+    // cluster have their own epoch, as entry costs may be worked out in the middle of an abstract search
+    private int localEpoch = 0;
+    private final int[] localDist;
+    private final int[] localFirstHop;
+    private final int[] localSeen;
+    private final int[] localClosed;
+    private int epoch = 0;
+    private final int[] targetDist; // cost from each node of the destination's cluster to the destination
+    private final int[] targetSeen;
+    private final int[] targetClosed;
+    private final int[] abstractDist;
+    private final int[] abstractFirstHop;
+    private final boolean[] abstractAcross; // whether a node's best known path ends by crossing its cluster
+    private final int[] abstractSeen;
+    private final int[] abstractClosed;
+    private final IntMinHeap heap = new IntMinHeap();
+    private final IntMinHeap localHeap = new IntMinHeap();
+    private int lastSettled = 0;
+
+    HierarchicalRouter(GraphTopology topology, NodeState state, int[] nodeX, int[] nodeY, int heuristicScale, int clusterSize) {
+        if (clusterSize < 1) {
+            throw new IllegalArgumentException("Clusters must be at least one cell across");
+        }
+        this.topology = topology;
+        this.state = state;
+        this.nodeX = nodeX;
+        this.nodeY = nodeY;
+        this.heuristicScale = heuristicScale;
+        int nodeCount = topology.getNodeCount();
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < nodeCount; i++) {
+            minX = Math.min(minX, nodeX[i]);
+            minY = Math.min(minY, nodeY[i]);
+            maxX = Math.max(maxX, nodeX[i]);
+            maxY = Math.max(maxY, nodeY[i]);
+        }
+        int clustersAcross = nodeCount == 0 ? 0 : Math.floorDiv(maxX, clusterSize) - Math.floorDiv(minX, clusterSize) + 1;
+        int clustersDown = nodeCount == 0 ? 0 : Math.floorDiv(maxY, clusterSize) - Math.floorDiv(minY, clusterSize) + 1;
+        int clusterCount = clustersAcross * clustersDown;
+        clusterOf = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            clusterOf[i] = (Math.floorDiv(nodeX[i], clusterSize) - Math.floorDiv(minX, clusterSize))
+                + (Math.floorDiv(nodeY[i], clusterSize) - Math.floorDiv(minY, clusterSize)) * clustersAcross;
+        }
+
+        boolean[] isEntry = new boolean[nodeCount];
+        boolean[] isExit = new boolean[nodeCount];
+        for (int from = 0; from < nodeCount; from++) {
+            for (int e = topology.offsets[from]; e < topology.offsets[from + 1]; e++) {
+                int to = topology.targets[e];
+                if (clusterOf[to] != clusterOf[from]) {
+                    isExit[from] = true;
+                    isEntry[to] = true;
+                }
+            }
+        }
+        int entrances = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            if (isEntry[i] || isExit[i]) entrances++;
+        }
+        entranceCount = entrances;
+
+        // counting sorts of the entries and exits by cluster
+        entryOffsets = new int[clusterCount + 1];
+        exitOffsets = new int[clusterCount + 1];
+        for (int i = 0; i < nodeCount; i++) {
+            if (isEntry[i]) entryOffsets[clusterOf[i] + 1]++;
+            if (isExit[i]) exitOffsets[clusterOf[i] + 1]++;
+        }
+        for (int c = 0; c < clusterCount; c++) {
+            entryOffsets[c + 1] += entryOffsets[c];
+            exitOffsets[c + 1] += exitOffsets[c];
+        }
+        entries = new int[entryOffsets[clusterCount]];
+        exits = new int[exitOffsets[clusterCount]];
+        entrySlot = new int[nodeCount];
+        exitSlot = new int[nodeCount];
+        Arrays.fill(entrySlot, -1);
+        Arrays.fill(exitSlot, -1);
+        int[] entryFill = Arrays.copyOf(entryOffsets, clusterCount);
+        int[] exitFill = new int[clusterCount];
+        for (int i = 0; i < nodeCount; i++) {
+            int c = clusterOf[i];
+            if (isEntry[i]) {
+                entrySlot[i] = entryFill[c];
+                entries[entryFill[c]++] = i;
+            }
+            if (isExit[i]) {
+                exitSlot[i] = exitFill[c];
+                exits[exitOffsets[c] + exitFill[c]++] = i;
+            }
+        }
+
+        rowStart = new int[entries.length];
+        int costCount = 0;
+        for (int k = 0; k < entries.length; k++) {
+            int c = clusterOf[entries[k]];
+            rowStart[k] = costCount;
+            costCount += exitOffsets[c + 1] - exitOffsets[c];
+        }
+        exitCosts = new int[costCount];
+        clusterVersion = new int[clusterCount];
+        rowVersion = new int[entries.length];
+        Arrays.fill(rowVersion, -1);
+
+        localDist = new int[nodeCount];
+        localFirstHop = new int[nodeCount];
+        localSeen = new int[nodeCount];
+        localClosed = new int[nodeCount];
+        targetDist = new int[nodeCount];
+        targetSeen = new int[nodeCount];
+        targetClosed = new int[nodeCount];
+        abstractDist = new int[nodeCount];
+        abstractFirstHop = new int[nodeCount];
+        abstractAcross = new boolean[nodeCount];
+        abstractSeen = new int[nodeCount];
+        abstractClosed = new int[nodeCount];
+    }
+
+    /**
+     * Records that a node's entry cost has changed, so the costs across its cluster are out of date.
+     * @param index the index of the node
+     */
+    void costChanged(int index) {
+        clusterVersion[clusterOf[index]]++;
+    }
+
+    boolean inSameCluster(int a, int b) {
+        return clusterOf[a] == clusterOf[b];
+    }
+
+    int getClusterCount() {
+        return clusterVersion.length;
+    }
+
+    int getEntranceCount() {
+        return entranceCount;
+    }
+
+    /**
+     * @return the number of entrances the last abstract search settled
+     */
+    int getLastSettled() {
+        return lastSettled;
+    }
+
+    /**
+     * Gets the next node on a cheapest path between nodes in different clusters.
+     * @param source the index of the node to start from
+     * @param target the index of the destination, which must not be in the source's cluster
+     * @return the index of the first node after the source on the path, or -1 if there is none
+     */
+    synchronized int nextHop(int source, int target) {
+        if (state.blockedTicks[target] > 0) {
+            return -1; // the target cannot be entered
+        }
+        int[] offsets = topology.offsets;
+        int[] targets = topology.targets;
+        int[] weights = topology.weights;
+        int sourceCluster = clusterOf[source];
+        int targetCluster = clusterOf[target];
+
+        nextEpoch();
+        searchTargetCluster(target);
+        nextLocalEpoch();
+        searchCluster(source, true);
+
+        // seed the abstract search with the exits of the source's cluster
+        heap.clear();
+        int targetX = nodeX[target];
+        int targetY = nodeY[target];
+        for (int k = exitOffsets[sourceCluster]; k < exitOffsets[sourceCluster + 1]; k++) {
+            int exit = exits[k];
+            if (localSeen[exit] == localEpoch) {
+                abstractDist[exit] = localDist[exit];
+                abstractFirstHop[exit] = localFirstHop[exit];
+                abstractAcross[exit] = true;
+                abstractSeen[exit] = epoch;
+                heap.push(exit, localDist[exit] + estimate(exit, targetX, targetY));
+            }
+        }
+
+        int best = UNREACHABLE;
+        int bestHop = -1;
+        lastSettled = 0;
+        while (!heap.isEmpty()) {
+            int current = heap.peekNode();
+            int key = heap.peekKey();
+            heap.pop();
+            if (key >= best) {
+                break; // the estimate never overshoots, so nothing left can beat the best path
+            }
+            int currentDist = key - estimate(current, targetX, targetY);
+            if (abstractClosed[current] == epoch || currentDist > abstractDist[current]) {
+                continue; // stale heap entry
+            }
+            abstractClosed[current] = epoch;
+            lastSettled++;
+            int hop = abstractFirstHop[current];
+
+            if (clusterOf[current] == targetCluster && targetSeen[current] == epoch && currentDist + targetDist[current] < best) {
+                best = currentDist + targetDist[current];
+                bestHop = hop;
+            }
+
+            // edges out of the cluster
+            for (int e = offsets[current], end = offsets[current + 1]; e < end; e++) {
+                int next = targets[e];
+                if (clusterOf[next] == clusterOf[current]) {
+                    continue;
+                }
+                int entryCost = entryCost(next);
+                if (entryCost == UNREACHABLE) {
+                    continue;
+                }
+                relax(next, currentDist + weights[e] + entryCost, current == source ? next : hop, false, targetX, targetY);
+            }
+
+            // paths across the cluster to its exits, only from an entry reached from another cluster
+            if (!abstractAcross[current]) {
+                int entry = entrySlot[current];
+                refresh(entry);
+                int cluster = clusterOf[current];
+                int first = exitOffsets[cluster];
+                int row = rowStart[entry];
+                for (int k = 0, count = exitOffsets[cluster + 1] - first; k < count; k++) {
+                    int cost = exitCosts[row + k];
+                    if (cost != UNREACHABLE) {
+                        relax(exits[first + k], currentDist + cost, hop, true, targetX, targetY);
+                    }
+                }
+            }
+        }
+        return bestHop;
+    }
+
+    private void relax(int node, int dist, int firstHop, boolean across, int targetX, int targetY) {
+        if (abstractClosed[node] == epoch) {
+            return;
+        }
+        if (abstractSeen[node] != epoch || dist < abstractDist[node]) {
+            abstractSeen[node] = epoch;
+            abstractDist[node] = dist;
+            abstractFirstHop[node] = firstHop;
+            abstractAcross[node] = across;
+            heap.push(node, dist + estimate(node, targetX, targetY));
+        }
+    }
+
+    private int estimate(int node, int targetX, int targetY) {
+        return heuristicScale * (Math.abs(nodeX[node] - targetX) + Math.abs(nodeY[node] - targetY));
+    }
+
+    /**
+     * Works out the costs from an entry to the exits of its cluster again if any of the cluster's nodes' entry
+     * costs have changed since they were last worked out.
+     * @param entry the entry's position in entries
+     */
+    private void refresh(int entry) {
+        int cluster = clusterOf[entries[entry]];
+        if (rowVersion[entry] == clusterVersion[cluster]) {
+            return;
+        }
+        rowVersion[entry] = clusterVersion[cluster];
+        nextLocalEpoch();
+        searchCluster(entries[entry], false);
+        int first = exitOffsets[cluster];
+        int row = rowStart[entry];
+        for (int k = 0, count = exitOffsets[cluster + 1] - first; k < count; k++) {
+            int exit = exits[first + k];
+            exitCosts[row + k] = exit == entries[entry] || localSeen[exit] != localEpoch ? UNREACHABLE : localDist[exit];
+        }
+    }
+
+    /**
+     * Runs Dijkstra from a node without leaving its cluster, filling the local distances, until every exit of the
+     * cluster is settled.
+     * @param recordFirstHops whether to record the first node after the start on each path
+     */
+    private void searchCluster(int start, boolean recordFirstHops) {
+        int[] offsets = topology.offsets;
+        int[] targets = topology.targets;
+        int[] weights = topology.weights;
+        int cluster = clusterOf[start];
+        int exitsLeft = exitOffsets[cluster + 1] - exitOffsets[cluster];
+        int epoch = localEpoch;
+        IntMinHeap heap = localHeap;
+        heap.clear();
+        localDist[start] = 0;
+        localFirstHop[start] = -1;
+        localSeen[start] = epoch;
+        heap.push(start, 0);
+        while (!heap.isEmpty()) {
+            int current = heap.peekNode();
+            int currentDist = heap.peekKey();
+            heap.pop();
+            if (localClosed[current] == epoch || currentDist > localDist[current]) {
+                continue; // stale heap entry
+            }
+            localClosed[current] = epoch;
+            if (exitSlot[current] >= 0 && --exitsLeft == 0) {
+                return;
+            }
+            for (int e = offsets[current], end = offsets[current + 1]; e < end; e++) {
+                int next = targets[e];
+                if (clusterOf[next] != cluster || localClosed[next] == epoch) {
+                    continue;
+                }
+                int entryCost = entryCost(next);
+                if (entryCost == UNREACHABLE) {
+                    continue;
+                }
+                int nextDist = currentDist + weights[e] + entryCost;
+                if (localSeen[next] != epoch || nextDist < localDist[next]) {
+                    localSeen[next] = epoch;
+                    localDist[next] = nextDist;
+                    if (recordFirstHops) localFirstHop[next] = current == start ? next : localFirstHop[current];
+                    heap.push(next, nextDist);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs Dijkstra backwards from the destination over incoming edges without leaving its cluster, filling the
+     * target distances, until every entry of the cluster is settled.
+     */
+    private void searchTargetCluster(int target) {
+        int[] reverseOffsets = topology.reverseOffsets;
+        int[] sources = topology.sources;
+        int[] reverseWeights = topology.reverseWeights;
+        int cluster = clusterOf[target];
+        int entriesLeft = entryOffsets[cluster + 1] - entryOffsets[cluster];
+        heap.clear();
+        targetDist[target] = 0;
+        targetSeen[target] = epoch;
+        heap.push(target, 0);
+        while (!heap.isEmpty()) {
+            int current = heap.peekNode();
+            int currentDist = heap.peekKey();
+            heap.pop();
+            if (targetClosed[current] == epoch || currentDist > targetDist[current]) {
+                continue; // stale heap entry
+            }
+            targetClosed[current] = epoch;
+            if (entrySlot[current] >= 0 && --entriesLeft == 0) {
+                return;
+            }
+            int entryCost = entryCost(current);
+            if (entryCost == UNREACHABLE) {
+                continue; // robots already here can leave, but nobody can pass through
+            }
+            for (int e = reverseOffsets[current], end = reverseOffsets[current + 1]; e < end; e++) {
+                int previous = sources[e];
+                if (clusterOf[previous] != cluster || targetClosed[previous] == epoch) {
+                    continue;
+                }
+                int previousDist = currentDist + reverseWeights[e] + entryCost;
+                if (targetSeen[previous] != epoch || previousDist < targetDist[previous]) {
+                    targetSeen[previous] = epoch;
+                    targetDist[previous] = previousDist;
+                    heap.push(previous, previousDist);
+                }
+            }
+        }
+    }
+
+    private int entryCost(int index) {
+        if (state.blockedTicks[index] > 0) {
+            return UNREACHABLE;
+        }
+        return state.occupancy[index] * PathFinder.OCCUPIER_PENALTY + state.queueTime[index];
+    }
+
+    private void nextEpoch() {
+        epoch++;
+        if (epoch == Integer.MAX_VALUE) { // stamps would become ambiguous, start again from a clean slate
+            Arrays.fill(targetSeen, 0);
+            Arrays.fill(targetClosed, 0);
+            Arrays.fill(abstractSeen, 0);
+            Arrays.fill(abstractClosed, 0);
+            epoch = 1;
+        }
+    }
+
+    private void nextLocalEpoch() {
+        localEpoch++;
+        if (localEpoch == Integer.MAX_VALUE) {
+            Arrays.fill(localSeen, 0);
+            Arrays.fill(localClosed, 0);
+            localEpoch = 1;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package livegraph;
+
+/**
+ * A random incident that blocked a node, as recorded in the graph's {@link IncidentScheduler} log.
+ */
+public final class Incident {
+    public final long tick; // the tick the node became blocked on
+    public final int nodeIndex;
+    public final int x;
+    public final int y;
+    public final NodeType nodeType;
+    public final int blockedTicks; // how many ticks the node was blocked for
+
+    public Incident(long tick, int nodeIndex, int x, int y, NodeType nodeType, int blockedTicks) {
+        this.tick = tick;
+        this.nodeIndex = nodeIndex;
+        this.x = x;
+        this.y = y;
+        this.nodeType = nodeType;
+        this.blockedTicks = blockedTicks;
+    }
+
+    @Override
+    public String toString() {
+        return "tick " + tick + ": " + nodeType + " (" + x + ", " + y + ") blocked for " + blockedTicks + " ticks";
+    }
+}
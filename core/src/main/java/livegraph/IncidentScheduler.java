@@ -0,0 +1,186 @@
+package livegraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Randomly blocks nodes, each node of a type having the same chance of an incident on every tick it is not already
+ * blocked. Rather than drawing for every node every tick, the trials of every node of a type on every tick are laid
+ * end to end, node index order within each tick, and the gap to the next incident is drawn from the geometric
+ * distribution. A tick costs nothing for a type with no incident on it. An incident that falls on a node that is
+ * already blocked is dropped, which leaves each unblocked node with the same chance as drawing for it on its own.
+ *
+ * The scheduler draws from its own stream of the graph's seed, so runs with the same seed are identical.
+ * The most recent incidents are kept in a log for the renderer and for metrics.
+ */
+public final class IncidentScheduler {
+    public static final double DEFAULT_ROAD_RATE = 0.000005; // chance of a road being blocked on any tick
+    public static final int MAX_BLOCKED_TICKS = 1000; // incidents block a node for up to this many ticks, uniformly
+    private static final int LOG_CAPACITY = 256;
+    private static final NodeType[] TYPES = NodeType.values();
+
+    private final List<? extends GraphNode<?, ?>> nodesByIndex;
+    private final double[] rates = new double[TYPES.length]; // chance of an incident per node and tick, by type
+    private final long[] gaps = new long[TYPES.length]; // trials left before the next incident of each type, from the start of the next tick
+    private int[][] nodesByType; // indices of the nodes of each type. null when out of date
+    private SplittableRandom random;
+
+    // incidents drawn for the current tick, before the graph checks whether their nodes are already blocked
+    private int drawnCount = 0;
+    private int[] drawnNodes = new int[4];
+    private int[] drawnTicks = new int[4];
+
+    private final Incident[] log = new Incident[LOG_CAPACITY]; // ring buffer of the most recent incidents
+    private long incidentCount = 0; // incidents ever recorded, the newest is at (incidentCount - 1) % LOG_CAPACITY
+
+    IncidentScheduler(List<? extends GraphNode<?, ?>> nodesByIndex, long seed) {
+        this.nodesByIndex = nodesByIndex;
+        rates[NodeType.ROAD.ordinal()] = DEFAULT_ROAD_RATE;
+        setSeed(seed);
+    }
+
+    /**
+     * Sets the chance of an incident on each node of a type, on every tick it is not already blocked.
+     * @param type the node type
+     * @param rate the chance per node and tick, 0 for none
+     */
+    public void setRate(NodeType type, double rate) {
+        if (!(rate >= 0 && rate < 1)) {
+            throw new IllegalArgumentException("Incident rate must be at least 0 and below 1, not " + rate);
+        }
+        rates[type.ordinal()] = rate;
+        gaps[type.ordinal()] = -1; // the gap is memoryless, so it can be redrawn at the new rate
+    }
+
+    public double getRate(NodeType type) {
+        return rates[type.ordinal()];
+    }
+
+    /**
+     * Restarts the scheduler's random stream.
+     * @param seed the seed of the stream
+     */
+    void setSeed(long seed) {
+        random = new SplittableRandom(seed);
+        Arrays.fill(gaps, -1);
+    }
+
+    /**
+     * Records that nodes have been added or replaced, so the nodes of each type are found again.
+     */
+    void nodesChanged() {
+        nodesByType = null;
+    }
+
+    /**
+     * Draws the incidents of one tick, read back with {@link #getDrawnCount()}, {@link #getDrawnNode(int)} and
+     * {@link #getDrawnTicks(int)}, in node index order within each type.
+     */
+    void draw() {
+        if (nodesByType == null) {
+            findNodesByType();
+        }
+        drawnCount = 0;
+        for (int type = 0; type < TYPES.length; type++) {
+            int[] nodes = nodesByType[type];
+            if (rates[type] == 0 || nodes.length == 0) {
+                continue;
+            }
+            long trial = gaps[type] < 0 ? nextGap(rates[type]) : gaps[type];
+            while (trial < nodes.length) {
+                addDrawn(nodes[(int) trial], (int) (random.nextDouble() * MAX_BLOCKED_TICKS));
+                trial += 1 + nextGap(rates[type]);
+            }
+            gaps[type] = trial - nodes.length;
+        }
+    }
+
+    /**
+     * @return the number of failed trials before the next success, each trial succeeding with the given chance
+     */
+    private long nextGap(double rate) {
+        double gap = Math.floor(Math.log(1 - random.nextDouble()) / Math.log1p(-rate));
+        return gap >= Long.MAX_VALUE / 2 ? Long.MAX_VALUE / 2 : (long) gap;
+    }
+
+    private void addDrawn(int node, int ticks) {
+        if (drawnCount == drawnNodes.length) {
+            drawnNodes = Arrays.copyOf(drawnNodes, drawnCount * 2);
+            drawnTicks = Arrays.copyOf(drawnTicks, drawnCount * 2);
+        }
+        drawnNodes[drawnCount] = node;
+        drawnTicks[drawnCount] = ticks;
+        drawnCount++;
+    }
+
+    private void findNodesByType() {
+        int[] counts = new int[TYPES.length];
+        for (GraphNode<?, ?> node : nodesByIndex) {
+            counts[node.getTileType().ordinal()]++;
+        }
+        nodesByType = new int[TYPES.length][];
+        for (int type = 0; type < TYPES.length; type++) {
+            nodesByType[type] = new int[counts[type]];
+            counts[type] = 0;
+        }
+        for (int i = 0; i < nodesByIndex.size(); i++) {
+            int type = nodesByIndex.get(i).getTileType().ordinal();
+            nodesByType[type][counts[type]++] = i;
+        }
+    }
+
+    int getDrawnCount() {
+        return drawnCount;
+    }
+
+    int getDrawnNode(int incident) {
+        return drawnNodes[incident];
+    }
+
+    int getDrawnTicks(int incident) {
+        return drawnTicks[incident];
+    }
+
+    /**
+     * Adds an incident that blocked a node to the log.
+     * @param incident the incident
+     */
+    void record(Incident incident) {
+        log[(int) (incidentCount % LOG_CAPACITY)] = incident;
+        incidentCount++;
+    }
+
+    /**
+     * Gets the number of incidents that have blocked a node so far.
+     * @return the number of incidents
+     */
+    public long getIncidentCount() {
+        return incidentCount;
+    }
+
+    /**
+     * Gets the most recent incident.
+     * @return the incident, or null if there has been none
+     */
+    public Incident getLastIncident() {
+        return incidentCount == 0 ? null : log[(int) ((incidentCount - 1) % LOG_CAPACITY)];
+    }
+
+    /**
+     * Gets the incidents since a tick, as far back as the log goes, which is the last 256 incidents.
+     * @param tick the first tick to include
+     * @return a new list of the incidents, oldest first
+     */
+    public List<Incident> getIncidentsSince(long tick) {
+        List<Incident> incidents = new ArrayList<>();
+        for (long i = Math.max(0, incidentCount - LOG_CAPACITY); i < incidentCount; i++) {
+            Incident incident = log[(int) (i % LOG_CAPACITY)];
+            if (incident.tick >= tick) {
+                incidents.add(incident);
+            }
+        }
+        return incidents;
+    }
+}
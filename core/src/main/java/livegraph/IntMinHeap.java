@@ -0,0 +1,74 @@
+package livegraph;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of (key, node index) pairs backed by int arrays, reused between searches.
+ * There is no decrease-key, searches push duplicates and skip stale entries when they are popped.
+ */
+class IntMinHeap {
+    private int[] nodes = new int[16];
+    private int[] keys = new int[16];
+    private int size = 0;
+
+    void clear() {
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the node index with the smallest key
+     */
+    int peekNode() {
+        return nodes[0];
+    }
+
+    /**
+     * @return the smallest key
+     */
+    int peekKey() {
+        return keys[0];
+    }
+
+    void push(int node, int key) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) break;
+            nodes[i] = nodes[parent];
+            keys[i] = keys[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        keys[i] = key;
+    }
+
+    /**
+     * Removes the entry with the smallest key.
+     */
+    void pop() {
+        size--;
+        if (size == 0) return;
+        int node = nodes[size];
+        int key = keys[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+            if (key <= keys[child]) break;
+            nodes[i] = nodes[child];
+            keys[i] = keys[child];
+            i = child;
+        }
+        nodes[i] = node;
+        keys[i] = key;
+    }
+}
@@ -0,0 +1,85 @@
+package livegraph;
+
+import java.util.Arrays;
+
+/**
+ * The output of the decide phase of a tick: robots asking to move between nodes, robots that have arrived, and
+ * robots dropped from the graph, all by {@link RobotStore} slot. Each thread deciding nodes has its own buffer;
+ * nothing is applied until the graph commits the tick. Buffers are reused, so a steady tick allocates nothing.
+ */
+final class MoveBuffer {
+    int moveCount = 0;
+    int[] sources = new int[16]; // index of the node each robot is leaving
+    int[] targets = new int[16]; // index of the node each robot wants to enter
+    int[] weights = new int[16]; // weight of the edge between them
+    int[] robots = new int[16]; // slot of each robot asking to move
+
+    int arrivalCount = 0;
+    int[] arrivalNodes = new int[16]; // index of the node each robot arrived at
+    int[] arrivals = new int[16]; // slot of each robot that reached its destination
+
+    int removalCount = 0;
+    int[] removals = new int[16]; // slot of each robot dropped from the graph without arriving
+
+    int queueEvents = 0; // robots that had to wait, for tick metrics
+    int blockEvents = 0; // nodes that became blocked, for tick metrics
+    int incidents = 0; // nodes that became blocked by a random incident, for tick metrics
+
+    void clear() {
+        moveCount = 0;
+        arrivalCount = 0;
+        removalCount = 0;
+        queueEvents = 0;
+        blockEvents = 0;
+        incidents = 0;
+    }
+
+    void addMove(int source, int target, int weight, int robot) {
+        if (moveCount == sources.length) {
+            sources = Arrays.copyOf(sources, moveCount * 2);
+            targets = Arrays.copyOf(targets, moveCount * 2);
+            weights = Arrays.copyOf(weights, moveCount * 2);
+            robots = Arrays.copyOf(robots, moveCount * 2);
+        }
+        sources[moveCount] = source;
+        targets[moveCount] = target;
+        weights[moveCount] = weight;
+        robots[moveCount] = robot;
+        moveCount++;
+    }
+
+    /**
+     * Appends everything recorded in another buffer to this one.
+     * @param other the buffer to append
+     */
+    void addAll(MoveBuffer other) {
+        for (int i = 0; i < other.moveCount; i++) {
+            addMove(other.sources[i], other.targets[i], other.weights[i], other.robots[i]);
+        }
+        for (int i = 0; i < other.arrivalCount; i++) {
+            addArrival(other.arrivalNodes[i], other.arrivals[i]);
+        }
+        for (int i = 0; i < other.removalCount; i++) {
+            addRemoval(other.removals[i]);
+        }
+        queueEvents += other.queueEvents;
+        blockEvents += other.blockEvents;
+    }
+
+    void addArrival(int node, int robot) {
+        if (arrivalCount == arrivals.length) {
+            arrivalNodes = Arrays.copyOf(arrivalNodes, arrivalCount * 2);
+            arrivals = Arrays.copyOf(arrivals, arrivalCount * 2);
+        }
+        arrivalNodes[arrivalCount] = node;
+        arrivals[arrivalCount] = robot;
+        arrivalCount++;
+    }
+
+    void addRemoval(int robot) {
+        if (removalCount == removals.length) {
+            removals = Arrays.copyOf(removals, removalCount * 2);
+        }
+        removals[removalCount++] = robot;
+    }
+}
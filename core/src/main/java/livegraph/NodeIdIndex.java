@@ -0,0 +1,110 @@
+package livegraph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Finds the dense index of a node from its ID. Generated maps number their nodes with small non-negative ints, so
+ * those are kept in an array indexed by the ID itself and looked up without boxing or hashing; any other ID (not an
+ * Integer, negative, or far larger than the number of nodes) falls back to a hash map.
+ * @param <N> the type of the node IDs
+ */
+final class NodeIdIndex<N> {
+    private static final int MIN_DIRECT_IDS = 1024; // IDs always held directly, however few nodes there are
+    private static final int DIRECT_IDS_PER_NODE = 8; // how sparse directly held IDs may be
+
+    private final int reservedIds; // IDs below this are always held directly
+    private int[] indexById; // index + 1 for each directly held ID, 0 if there is no such node
+    private final HashMap<N, Integer> indexByOtherId = new HashMap<>();
+    private int size = 0; // IDs held, directly or not
+
+    /**
+     * @param reservedIds how many IDs from 0 up to hold directly from the start, such as the number of cells of
+     *                    the grid the node IDs are numbered over
+     */
+    NodeIdIndex(int reservedIds) {
+        this.reservedIds = reservedIds;
+        this.indexById = new int[reservedIds];
+    }
+
+    /**
+     * @param id the node's ID
+     * @return the node's index, or -1 if there is no node with the ID
+     */
+    int indexOf(int id) {
+        if (id >= 0 && id < indexById.length) {
+            int index = indexById[id] - 1;
+            if (index >= 0 || indexByOtherId.isEmpty()) {
+                return index;
+            }
+        } else if (indexByOtherId.isEmpty()) {
+            return -1;
+        }
+        return indexOfOther(id);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int indexOfOther(int id) {
+        Integer index = indexByOtherId.get((N) Integer.valueOf(id));
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param id the node's ID
+     * @return the node's index, or -1 if there is no node with the ID
+     */
+    int indexOf(N id) {
+        if (id instanceof Integer) {
+            return indexOf(((Integer) id).intValue());
+        }
+        Integer index = indexByOtherId.get(id);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Records a node's index, replacing the index of any node with the same ID.
+     * @param id the node's ID
+     * @param index the node's index
+     */
+    void put(N id, int index) {
+        if (id instanceof Integer) {
+            int intId = (Integer) id;
+            if (intId >= 0 && intId >= indexById.length && intId < directLimit(size + 1)) {
+                grow(intId + 1);
+            }
+            if (intId >= 0 && intId < indexById.length) {
+                if (indexById[intId] == 0) {
+                    size++;
+                }
+                indexById[intId] = index + 1;
+                return;
+            }
+        }
+        if (indexByOtherId.put(id, index) == null) {
+            size++;
+        }
+    }
+
+    private int directLimit(int nodeCount) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(Math.max(MIN_DIRECT_IDS, reservedIds), (long) nodeCount * DIRECT_IDS_PER_NODE));
+    }
+
+    /**
+     * Grows the array to hold at least the given number of IDs, moving in any IDs it now covers.
+     */
+    private void grow(int ids) {
+        indexById = Arrays.copyOf(indexById, Math.min(directLimit(size + 1), Math.max(ids, indexById.length * 2)));
+        for (Iterator<Map.Entry<N, Integer>> it = indexByOtherId.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<N, Integer> entry = it.next();
+            if (entry.getKey() instanceof Integer) {
+                int id = (Integer) entry.getKey();
+                if (id >= 0 && id < indexById.length) {
+                    indexById[id] = entry.getValue() + 1;
+                    it.remove();
+                }
+            }
+        }
+    }
+}
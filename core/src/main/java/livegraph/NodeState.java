@@ -0,0 +1,107 @@
+package livegraph;
+
+import java.util.Arrays;
+
+/**
+ * The dynamic state of every node in a graph, held in parallel primitive arrays indexed by node index
+ * (the same indices as {@link GraphTopology}), so hot loops read ints rather than chasing node objects.
+ * Blocked ticks and queue time are double buffered: during a tick every node reads the current arrays
+ * and writes its next values to the pending arrays, which become current when the tick is committed.
+ */
+public final class NodeState {
+    int[] blockedTicks; // number of ticks the node is disabled for, no robots can enter, but robots can leave
+    int[] occupancy; // number of robots occupying the node, mirrors the size of its occupier list
+    int[] queueTime; // the queue time spent at the node
+    long[] randomState; // the node's own SplitMix random stream
+    int[] pendingBlockedTicks; // blocked ticks for the next tick, written while deciding
+    int[] pendingQueueTime; // queue time for the next tick, written while deciding
+    int[] firstOccupant; // RobotStore slot of the first robot on the node, -1 if it is empty
+    int[] lastOccupant; // RobotStore slot of the last robot on the node, -1 if it is empty
+
+    NodeState(int capacity) {
+        blockedTicks = new int[capacity];
+        occupancy = new int[capacity];
+        queueTime = new int[capacity];
+        randomState = new long[capacity];
+        pendingBlockedTicks = new int[capacity];
+        pendingQueueTime = new int[capacity];
+        firstOccupant = new int[capacity];
+        lastOccupant = new int[capacity];
+        Arrays.fill(firstOccupant, -1);
+        Arrays.fill(lastOccupant, -1);
+    }
+
+    /**
+     * Grows the arrays so that they can hold at least the given number of nodes.
+     * @param nodeCount the number of nodes
+     */
+    void ensureCapacity(int nodeCount) {
+        if (blockedTicks.length < nodeCount) {
+            int size = Math.max(nodeCount, blockedTicks.length * 2);
+            blockedTicks = Arrays.copyOf(blockedTicks, size);
+            occupancy = Arrays.copyOf(occupancy, size);
+            queueTime = Arrays.copyOf(queueTime, size);
+            randomState = Arrays.copyOf(randomState, size);
+            pendingBlockedTicks = Arrays.copyOf(pendingBlockedTicks, size);
+            pendingQueueTime = Arrays.copyOf(pendingQueueTime, size);
+            int from = firstOccupant.length;
+            firstOccupant = Arrays.copyOf(firstOccupant, size);
+            lastOccupant = Arrays.copyOf(lastOccupant, size);
+            Arrays.fill(firstOccupant, from, size, -1);
+            Arrays.fill(lastOccupant, from, size, -1);
+        }
+    }
+
+    /**
+     * Copies one node's state from another state store. Occupants are not copied, as robots only live in a
+     * graph's {@link RobotStore}; the node starts empty.
+     * @param from the store to copy from
+     * @param fromIndex the node's index in that store
+     * @param toIndex the node's index in this store
+     */
+    void copyFrom(NodeState from, int fromIndex, int toIndex) {
+        blockedTicks[toIndex] = from.blockedTicks[fromIndex];
+        queueTime[toIndex] = from.queueTime[fromIndex];
+        randomState[toIndex] = from.randomState[fromIndex];
+        occupancy[toIndex] = 0; // counted again as the node's robots are adopted, see GraphNode.adoptDetachedOccupiers
+        firstOccupant[toIndex] = -1;
+        lastOccupant[toIndex] = -1;
+    }
+
+    /**
+     * Makes the pending blocked ticks and queue times current. Every node must have written its pending values.
+     */
+    void swapPending() {
+        int[] blocked = blockedTicks;
+        blockedTicks = pendingBlockedTicks;
+        pendingBlockedTicks = blocked;
+        int[] queue = queueTime;
+        queueTime = pendingQueueTime;
+        pendingQueueTime = queue;
+    }
+
+    public int getBlockedTicks(int index) {
+        return blockedTicks[index];
+    }
+
+    public boolean isBlocked(int index) {
+        return blockedTicks[index] > 0;
+    }
+
+    public int getOccupancy(int index) {
+        return occupancy[index];
+    }
+
+    public int getQueueTime(int index) {
+        return queueTime[index];
+    }
+
+    /**
+     * Gets the first robot on a node. The rest follow through {@link RobotStore#getNext(int)}.
+     * @param index the node's index
+     * @return the robot's slot, or -1 if the node is empty
+     */
+    public int getFirstOccupant(int index) {
+        return firstOccupant[index];
+    }
+}
@@ -0,0 +1,951 @@
+package livegraph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Congestion-aware shortest path search over the dense node indices assigned by a {@link Graph}.
+ * Searches walk the graph's {@link GraphTopology} and read congestion from its {@link NodeState} arrays.
+ * All working state (distances, first hops, visit stamps and the binary heap) lives in reusable int arrays,
+ * so a search allocates nothing once the arrays have grown to the size of the graph.
+ *
+ * Robots are routed with per-destination next-hop tables, each built by a single reverse Dijkstra from the
+ * destination over incoming edges and shared by every robot heading there. The cost of entering a node changes
+ * as robots come and go, so each tick the nodes whose entry cost changed are appended to a change log. A table
+ * that is out of date is repaired LPA* style from the changes it has not yet seen, re-settling only the nodes
+ * whose distance to the destination is affected. Ties between equally cheap next hops go to the neighbour with
+ * the lowest index, so a repaired table is identical to a rebuilt one.
+ *
+ * Robots travel along cheapest paths, so the nodes they congest often lie on the routes of large parts of the
+ * graph. A repair that grows dearer than a rebuild is abandoned for one, and its table backs off to rebuilding
+ * from scratch for a number of updates that doubles with each abandoned repair. A table that has missed changes
+ * no longer in the log is always rebuilt. Tables are brought up to date lazily, when first used after a change.
+ * Changes are only seen when the tick advances, so a table is never found out of date on the tick it was built;
+ * an out of date table is then reused for up to stalenessTicks - 1 ticks after the change is seen.
+ *
+ * Routing may run on several threads during the decide phase of a tick, while the graph is not being changed:
+ * each thread searches with its own working arrays and a table is rebuilt by the first thread that needs it.
+ * Everything else, including advancing the tick and reporting changes, must happen on one thread between ticks.
+ */
+public class PathFinder<R, N> {
+    static final int OCCUPIER_PENALTY = 10; // extra weight per robot occupying a node, to avoid congestion
+    private static final int REPAIR_COST_FACTOR = 3; // a node settled by a repair costs about this many settled by a rebuild
+    private static final int MAX_REPAIR_BACKOFF = 64; // most rebuilds in a row before a table tries repairing again
+    private static final int UNREACHABLE = Integer.MAX_VALUE; // distance of a node with no path, and the entry cost of a blocked node
+
+    private final List<GraphNode<R, N>> nodesByIndex;
+    private final NodeIdIndex<N> indexById;
+    private final NodeState state;
+    private GraphTopology topology; // rebuilt on demand after the edges change, null while out of date
+    private int[] nodeX = new int[0]; // coordinates of each node, by index, for the A* estimate
+    private int[] nodeY = new int[0];
+    private int heuristicScale = 0; // the A* estimate is the Manhattan distance to the destination times this
+    private SearchMode searchMode = SearchMode.DIJKSTRA; // how nextHop searches
+    private int clusterSize = 16; // cells across each cluster of the hierarchical search, 8 road cells of 2x2 lanes
+    private HierarchicalRouter hierarchy; // built on the first hierarchical search, null while out of date
+    private DistanceOracle oracle; // landmark bounds for landmark searches, null if none has been built or given
+
+    private final ThreadLocal<SearchSpace> searchSpaces = ThreadLocal.withInitial(SearchSpace::new);
+
+    private AtomicReferenceArray<NextHopTable> tablesByDestination = new AtomicReferenceArray<>(0);
+    private int currentTick = 0;
+    private int stalenessTicks = 1; // an outdated table is still used while it is younger than this many ticks
+    private boolean incremental = true; // whether outdated tables are repaired rather than rebuilt
+
+    private int[] entryCosts = new int[0]; // entry cost of each node when changes were last collected
+    private int[] changeLog = new int[0]; // ring buffer of the indices of nodes whose entry cost changed
+    private long changeCount = 0; // number of changes ever logged, tables record how many they have applied
+    private long oldestChange = 0; // the first change still in the log, tables that missed earlier ones are rebuilt
+    private boolean costsDirty = true; // whether any node's entry cost may have changed since changes were last collected
+    private int[] touched = new int[16]; // nodes whose entry cost may have changed, compared rather than every node
+    private int touchedCount = 0;
+
+    private volatile boolean countingSearches = false; // whether searches are counted and timed, for tick metrics
+    private final LongAdder searchCount = new LongAdder();
+    private final LongAdder nodesExpanded = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+
+    PathFinder(List<GraphNode<R, N>> nodesByIndex, NodeIdIndex<N> indexById, NodeState state) {
+        this.nodesByIndex = nodesByIndex;
+        this.indexById = indexById;
+        this.state = state;
+    }
+
+    /**
+     * The cost of moving along an edge into the given node, including the congestion penalty.
+     * @param edgeWeight the weight of the edge into the node
+     * @param node the node being entered
+     * @return the cost of entering the node
+     */
+    public static int edgeCost(int edgeWeight, GraphNode<?, ?> node) {
+        return edgeWeight + node.getOccupancy() * OCCUPIER_PENALTY + node.getQueueTime();
+    }
+
+    /**
+     * Gets the index of a node by its ID.
+     * @param nodeId the ID of the node
+     * @return the node's index, or -1 if it is not in the graph
+     */
+    int indexOf(N nodeId) {
+        return indexById.indexOf(nodeId);
+    }
+
+    GraphNode<R, N> nodeAt(int index) {
+        return nodesByIndex.get(index);
+    }
+
+    /**
+     * Gets the topology the searches run over, building it if the edges have changed since it was last built.
+     * @return the current topology
+     */
+    public GraphTopology getTopology() {
+        if (topology == null || topology.getNodeCount() != nodesByIndex.size()) {
+            GraphTopology built = GraphTopology.build(nodesByIndex);
+            int nodeCount = built.getNodeCount();
+            nodeX = new int[nodeCount];
+            nodeY = new int[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                nodeX[i] = nodesByIndex.get(i).getX();
+                nodeY[i] = nodesByIndex.get(i).getY();
+            }
+            // the cheapest cost of moving one cell, in whole units so that the A* estimate never overshoots
+            int scale = Integer.MAX_VALUE;
+            for (int from = 0; from < nodeCount; from++) {
+                for (int e = built.offsets[from]; e < built.offsets[from + 1]; e++) {
+                    int to = built.targets[e];
+                    int cells = Math.abs(nodeX[to] - nodeX[from]) + Math.abs(nodeY[to] - nodeY[from]);
+                    if (cells > 0) {
+                        scale = Math.min(scale, built.weights[e] / cells);
+                    }
+                }
+            }
+            heuristicScale = scale == Integer.MAX_VALUE ? 0 : scale;
+            hierarchy = null;
+            topology = built;
+        }
+        return topology;
+    }
+
+    /**
+     * Gets the next node on the cheapest path from a node to a destination with a fresh search, run the way the
+     * search mode says. Blocked nodes cannot be entered, but the source node may be blocked.
+     * @param from the node to start from
+     * @param destinationNodeId the ID of the destination node
+     * @return the first node after from on the cheapest path, or null if already at the destination or no path exists
+     */
+    public GraphNode<R, N> nextHop(GraphNode<R, N> from, N destinationNodeId) {
+        int destinationIndex = indexById.indexOf(destinationNodeId);
+        if (destinationIndex < 0 || destinationIndex == from.getIndex()) {
+            return null;
+        }
+        GraphNode<R, N> destination = nodesByIndex.get(destinationIndex);
+        getTopology();
+        int next;
+        switch (searchMode) {
+            case A_STAR: next = forwardNextHop(from.getIndex(), destination.getIndex(), heuristicScale, null); break;
+            case LANDMARKS: next = forwardNextHop(from.getIndex(), destination.getIndex(), heuristicScale, oracle); break;
+            case BIDIRECTIONAL: next = bidirectionalNextHop(from.getIndex(), destination.getIndex()); break;
+            case HIERARCHICAL: next = hierarchicalNextHop(from.getIndex(), destination.getIndex()); break;
+            default: next = forwardNextHop(from.getIndex(), destination.getIndex(), 0, null); break;
+        }
+        return next < 0 ? null : nodesByIndex.get(next);
+    }
+
+    /**
+     * Searches forwards from the source, ordering nodes by their distance from the source plus the Manhattan
+     * distance to the target times the heuristic scale. The scale is never more than the cheapest cost of moving
+     * one cell, so the estimate never overshoots and is consistent, and the first path to settle the target is a
+     * cheapest one. A scale of 0 is plain Dijkstra. With an oracle, the estimate is the larger of that and the
+     * bound from the landmarks that bound the whole trip best, which is just as consistent.
+     * @return the index of the first node after the source on the path, or -1 if there is none
+     */
+    private int forwardNextHop(int source, int target, int scale, DistanceOracle landmarks) {
+        long start = countingSearches ? System.nanoTime() : 0;
+        int expanded = 0;
+        int[] offsets = topology.offsets;
+        int[] targets = topology.targets;
+        int[] weights = topology.weights;
+        int[] nodeX = this.nodeX;
+        int[] nodeY = this.nodeY;
+        int targetX = nodeX[target];
+        int targetY = nodeY[target];
+        int[] blockedTicks = state.blockedTicks;
+        int[] occupancy = state.occupancy;
+        int[] queueTime = state.queueTime;
+
+        SearchSpace space = startSearch();
+        int[] dist = space.dist;
+        int[] firstHop = space.firstHop;
+        int[] seenEpoch = space.seenEpoch;
+        int[] closedEpoch = space.closedEpoch;
+        int epoch = space.epoch;
+        IntMinHeap heap = space.heap;
+        int[] activeLandmarks = space.activeLandmarks;
+        int activeCount = landmarks == null ? 0 : landmarks.selectLandmarks(source, target, activeLandmarks, space.landmarkBounds);
+
+        dist[source] = 0;
+        firstHop[source] = -1;
+        seenEpoch[source] = epoch;
+        heap.push(source, 0);
+
+        while (!heap.isEmpty()) {
+            int current = heap.peekNode();
+            heap.pop();
+            if (closedEpoch[current] == epoch) {
+                continue; // stale heap entry, the estimate is consistent so a settled node is never improved on
+            }
+            int currentDist = dist[current];
+            closedEpoch[current] = epoch;
+            expanded++;
+
+            if (current == target) {
+                countSearch(start, expanded);
+                return firstHop[current];
+            }
+
+            for (int e = offsets[current], end = offsets[current + 1]; e < end; e++) {
+                int nextIndex = targets[e];
+                if (closedEpoch[nextIndex] == epoch || blockedTicks[nextIndex] > 0) {
+                    continue;
+                }
+                int nextDist = currentDist + weights[e] + occupancy[nextIndex] * OCCUPIER_PENALTY + queueTime[nextIndex];
+                if (seenEpoch[nextIndex] != epoch || nextDist < dist[nextIndex]) {
+                    seenEpoch[nextIndex] = epoch;
+                    dist[nextIndex] = nextDist;
+                    firstHop[nextIndex] = current == source ? nextIndex : firstHop[current];
+                    int estimate = scale * (Math.abs(nodeX[nextIndex] - targetX) + Math.abs(nodeY[nextIndex] - targetY));
+                    if (activeCount > 0) {
+                        estimate = Math.max(estimate, landmarks.lowerBound(nextIndex, target, activeLandmarks, activeCount));
+                    }
+                    heap.push(nextIndex, nextDist + estimate);
+                }
+            }
+        }
+
+        countSearch(start, expanded);
+        return -1; // No path found
+    }
+
+    /**
+     * Searches over the entrances of clusters when the source and target are in different clusters, and with A*
+     * when they share one, as a path between them may still leave the cluster and come back.
+     * @return the index of the first node after the source on the path, or -1 if there is none
+     */
+    private int hierarchicalNextHop(int source, int target) {
+        HierarchicalRouter hierarchy = getHierarchy();
+        if (hierarchy.inSameCluster(source, target)) {
+            return forwardNextHop(source, target, heuristicScale, null);
+        }
+        long start = countingSearches ? System.nanoTime() : 0;
+        int next = hierarchy.nextHop(source, target);
+        countSearch(start, hierarchy.getLastSettled());
+        return next;
+    }
+
+    /**
+     * Gets the clusters for hierarchical searches, building them if the topology has changed, and brings the
+     * costs they know of up to date.
+     */
+    private synchronized HierarchicalRouter getHierarchy() {
+        if (costsDirty || touchedCount > 0) {
+            collectChanges();
+        }
+        if (hierarchy == null) {
+            hierarchy = new HierarchicalRouter(getTopology(), state, nodeX, nodeY, heuristicScale, clusterSize);
+        }
+        return hierarchy;
+    }
+
+    /**
+     * Searches forwards from the source and backwards from the target over incoming edges, each time expanding the
+     * side whose next node is closer to its end. Whenever an edge joins a node reached from the source to one reached
+     * from the target, the path through it is a candidate. Once the two next distances add up to at least the best
+     * candidate, no path through an unsettled node can be cheaper, so the best candidate is a cheapest path.
+     * @return the index of the first node after the source on the path, or -1 if there is none
+     */
+    private int bidirectionalNextHop(int source, int target) {
+        int[] blockedTicks = state.blockedTicks;
+        if (blockedTicks[target] > 0) {
+            return -1; // the target cannot be entered
+        }
+        long start = countingSearches ? System.nanoTime() : 0;
+        int expanded = 0;
+        int[] offsets = topology.offsets;
+        int[] targets = topology.targets;
+        int[] weights = topology.weights;
+        int[] reverseOffsets = topology.reverseOffsets;
+        int[] sources = topology.sources;
+        int[] reverseWeights = topology.reverseWeights;
+        int[] occupancy = state.occupancy;
+        int[] queueTime = state.queueTime;
+
+        SearchSpace space = startSearch();
+        int[] dist = space.dist;
+        int[] firstHop = space.firstHop;
+        int[] seenEpoch = space.seenEpoch;
+        int[] closedEpoch = space.closedEpoch;
+        IntMinHeap heap = space.heap;
+        int[] reverseDist = space.reverseDist;
+        int[] reverseSeenEpoch = space.reverseSeenEpoch;
+        int[] reverseClosedEpoch = space.reverseClosedEpoch;
+        IntMinHeap reverseHeap = space.reverseHeap;
+        int epoch = space.epoch;
+
+        dist[source] = 0;
+        firstHop[source] = -1;
+        seenEpoch[source] = epoch;
+        heap.push(source, 0);
+        reverseDist[target] = 0;
+        reverseSeenEpoch[target] = epoch;
+        reverseHeap.push(target, 0);
+
+        int best = UNREACHABLE;
+        int bestHop = -1;
+        while (!heap.isEmpty() || !reverseHeap.isEmpty()) {
+            if ((heap.isEmpty() || reverseHeap.isEmpty()) && best == UNREACHABLE) {
+                break; // one side has run out without meeting the other, there is no path
+            }
+            // an empty side counts as 0, so the other carries on until it cannot improve on the best candidate
+            int forwardKey = heap.isEmpty() ? 0 : heap.peekKey();
+            int reverseKey = reverseHeap.isEmpty() ? 0 : reverseHeap.peekKey();
+            if (forwardKey + reverseKey >= best) {
+                break;
+            }
+
+            if (!heap.isEmpty() && (reverseHeap.isEmpty() || forwardKey <= reverseKey)) {
+                int current = heap.peekNode();
+                heap.pop();
+                if (closedEpoch[current] == epoch || forwardKey > dist[current]) {
+                    continue; // stale heap entry
+                }
+                closedEpoch[current] = epoch;
+                expanded++;
+                for (int e = offsets[current], end = offsets[current + 1]; e < end; e++) {
+                    int nextIndex = targets[e];
+                    if (closedEpoch[nextIndex] == epoch || blockedTicks[nextIndex] > 0) {
+                        continue;
+                    }
+                    int nextDist = forwardKey + weights[e] + occupancy[nextIndex] * OCCUPIER_PENALTY + queueTime[nextIndex];
+                    int hop = current == source ? nextIndex : firstHop[current];
+                    if (seenEpoch[nextIndex] != epoch || nextDist < dist[nextIndex]) {
+                        seenEpoch[nextIndex] = epoch;
+                        dist[nextIndex] = nextDist;
+                        firstHop[nextIndex] = hop;
+                        heap.push(nextIndex, nextDist);
+                    }
+                    if (reverseSeenEpoch[nextIndex] == epoch && nextDist + reverseDist[nextIndex] < best) {
+                        best = nextDist + reverseDist[nextIndex];
+                        bestHop = hop;
+                    }
+                }
+            } else {
+                int current = reverseHeap.peekNode();
+                reverseHeap.pop();
+                if (reverseClosedEpoch[current] == epoch || reverseKey > reverseDist[current]) {
+                    continue; // stale heap entry
+                }
+                reverseClosedEpoch[current] = epoch;
+                expanded++;
+                if (blockedTicks[current] > 0) {
+                    continue; // robots already here can leave, but nobody can pass through
+                }
+                int entryCost = occupancy[current] * OCCUPIER_PENALTY + queueTime[current];
+                for (int e = reverseOffsets[current], end = reverseOffsets[current + 1]; e < end; e++) {
+                    int previous = sources[e];
+                    if (reverseClosedEpoch[previous] == epoch) {
+                        continue;
+                    }
+                    int previousDist = reverseKey + reverseWeights[e] + entryCost;
+                    if (reverseSeenEpoch[previous] != epoch || previousDist < reverseDist[previous]) {
+                        reverseSeenEpoch[previous] = epoch;
+                        reverseDist[previous] = previousDist;
+                        reverseHeap.push(previous, previousDist);
+                    }
+                    if (seenEpoch[previous] == epoch && dist[previous] + previousDist < best) {
+                        best = dist[previous] + previousDist;
+                        bestHop = previous == source ? current : firstHop[previous];
+                    }
+                }
+            }
+        }
+
+        countSearch(start, expanded);
+        return bestHop;
+    }
+
+    /**
+     * Gets the next node towards a destination from the destination's shared next-hop table,
+     * rebuilding the table first if it is missing or too stale.
+     * @param from the node to start from
+     * @param destinationNodeId the ID of the destination node
+     * @return the next node, or null if already at the destination or no path exists
+     */
+    public GraphNode<R, N> route(GraphNode<R, N> from, N destinationNodeId) {
+        int destination = indexById.indexOf(destinationNodeId);
+        if (destination < 0) {
+            return null;
+        }
+        int next = route(from.getIndex(), destination);
+        return next < 0 ? null : nodesByIndex.get(next);
+    }
+
+    /**
+     * Gets the index of the next node towards a destination from the destination's shared next-hop table.
+     * @param from the index of the node to start from
+     * @param destination the index of the destination node
+     * @return the index of the next node, or -1 if already at the destination or no path exists
+     */
+    public int route(int from, int destination) {
+        if (from == destination) {
+            return -1;
+        }
+        return tableFor(destination)[from];
+    }
+
+    private int[] tableFor(int destination) {
+        if (costsDirty || touchedCount > 0) {
+            collectChanges();
+        }
+        if (tablesByDestination.length() < nodesByIndex.size()) {
+            resizeTables();
+        }
+        NextHopTable table = tablesByDestination.get(destination);
+        if (table == null) {
+            NextHopTable created = new NextHopTable();
+            table = tablesByDestination.compareAndSet(destination, null, created) ? created : tablesByDestination.get(destination);
+        }
+        // a table is rebuilt at most once per tick, so its array is not written again while it is being read
+        synchronized (table) {
+            int nodeCount = nodesByIndex.size();
+            boolean upToDate = table.nextHops.length == nodeCount
+                && (table.appliedChanges == changeCount // nothing has changed since it was built
+                    || currentTick - table.builtTick < stalenessTicks); // outdated, but still within the staleness budget
+            if (!upToDate || table.builtTick == NextHopTable.NEVER_BUILT) {
+                boolean repairable = incremental && table.nextHops.length == nodeCount
+                    && table.builtTick != NextHopTable.NEVER_BUILT
+                    && table.appliedChanges >= oldestChange;
+                if (repairable && table.rebuildsBeforeRepair == 0) {
+                    if (repairTable(destination, table, nodeCount / REPAIR_COST_FACTOR)) {
+                        table.repairBackoff = 0;
+                    } else { // a rebuild is cheaper, back off from repairing this table for a while
+                        buildTable(destination, table);
+                        table.repairBackoff = Math.min(Math.max(1, table.repairBackoff * 2), MAX_REPAIR_BACKOFF);
+                        table.rebuildsBeforeRepair = table.repairBackoff;
+                    }
+                } else {
+                    buildTable(destination, table);
+                    if (table.rebuildsBeforeRepair > 0) table.rebuildsBeforeRepair--;
+                }
+            }
+            return table.nextHops;
+        }
+    }
+
+    private void resizeTables() {
+        AtomicReferenceArray<NextHopTable> resized = new AtomicReferenceArray<>(nodesByIndex.size());
+        for (int i = 0; i < tablesByDestination.length(); i++) {
+            resized.set(i, tablesByDestination.get(i));
+        }
+        tablesByDestination = resized;
+    }
+
+    /**
+     * Runs a reverse Dijkstra from the destination over incoming edges, recording for every node its distance to
+     * the destination and the neighbour to move to next. Costs are identical to the forward search: entering a node
+     * costs its edge weight plus the congestion penalty, and blocked nodes can be left but not entered.
+     */
+    private void buildTable(int destination, NextHopTable table) {
+        int nodeCount = nodesByIndex.size();
+        if (table.nextHops.length != nodeCount) {
+            table.nextHops = new int[nodeCount];
+            table.distances = new int[nodeCount];
+        }
+        long start = countingSearches ? System.nanoTime() : 0;
+        int expanded = 0;
+        int[] distances = table.distances;
+        int[] nextHops = table.nextHops;
+        Arrays.fill(distances, UNREACHABLE);
+        Arrays.fill(nextHops, -1);
+        table.builtTick = currentTick;
+        table.appliedChanges = changeCount;
+        GraphTopology topology = getTopology();
+        int[] reverseOffsets = topology.reverseOffsets;
+        int[] sources = topology.sources;
+        int[] reverseWeights = topology.reverseWeights;
+        int[] entryCosts = this.entryCosts;
+
+        SearchSpace space = startSearch();
+        int[] closedEpoch = space.closedEpoch;
+        int epoch = space.epoch;
+        IntMinHeap heap = space.heap;
+
+        distances[destination] = 0;
+        heap.push(destination, 0);
+
+        while (!heap.isEmpty()) {
+            int current = heap.peekNode();
+            int currentDist = heap.peekKey();
+            heap.pop();
+            if (closedEpoch[current] == epoch || currentDist > distances[current]) {
+                continue; // stale heap entry
+            }
+            closedEpoch[current] = epoch;
+            expanded++;
+
+            int entryCost = entryCosts[current];
+            if (entryCost == UNREACHABLE) {
+                continue; // blocked, robots already here can leave, but nobody can pass through
+            }
+            for (int e = reverseOffsets[current], end = reverseOffsets[current + 1]; e < end; e++) {
+                int previous = sources[e];
+                if (previous == destination) {
+                    continue;
+                }
+                int previousDist = currentDist + reverseWeights[e] + entryCost;
+                if (previousDist < distances[previous]) {
+                    distances[previous] = previousDist;
+                    nextHops[previous] = current;
+                    heap.push(previous, previousDist);
+                } else if (previousDist == distances[previous] && current < nextHops[previous]) {
+                    nextHops[previous] = current; // equally cheap, the lower index wins so that repairs agree
+                }
+            }
+        }
+        countSearch(start, expanded);
+    }
+
+    /**
+     * Brings a table up to date with the changes it has not yet applied. The table's distances are the g values
+     * of Lifelong Planning A* without a heuristic: every node that enters a changed node has its best distance
+     * through its outgoing edges (its rhs value) recomputed, and nodes whose rhs no longer matches their distance
+     * are settled in order of the smaller of the two. A node whose distance fell takes the new distance and offers
+     * it to the nodes entering it, and a node whose distance rose is first made unreachable, so that only the nodes
+     * that were routed through it look for a new way on, and is then settled again. Nodes that were not affected
+     * are never touched.
+     * @param maxSettled the most nodes to settle before giving up, as rebuilding would be cheaper
+     * @return whether the table was repaired, if not it is left half repaired and must be rebuilt
+     */
+    private boolean repairTable(int destination, NextHopTable table, int maxSettled) {
+        long start = countingSearches ? System.nanoTime() : 0;
+        int expanded = 0;
+        GraphTopology topology = getTopology();
+        int[] reverseOffsets = topology.reverseOffsets;
+        int[] sources = topology.sources;
+        int[] reverseWeights = topology.reverseWeights;
+        int[] distances = table.distances;
+        int[] nextHops = table.nextHops;
+        int[] entryCosts = this.entryCosts;
+
+        SearchSpace space = startSearch(); // rhs values are held in dist, stamped with seenEpoch
+        int[] rhs = space.dist;
+        int[] seenEpoch = space.seenEpoch;
+        int epoch = space.epoch;
+        IntMinHeap heap = space.heap;
+
+        for (long change = table.appliedChanges; change < changeCount; change++) {
+            int changed = changeLog[(int) (change % changeLog.length)];
+            for (int e = reverseOffsets[changed], end = reverseOffsets[changed + 1]; e < end; e++) {
+                updateNode(sources[e], destination, table, space);
+            }
+        }
+        table.builtTick = currentTick;
+        table.appliedChanges = changeCount;
+
+        while (!heap.isEmpty()) {
+            int current = heap.peekNode();
+            int key = heap.peekKey();
+            heap.pop();
+            int currentRhs = seenEpoch[current] == epoch ? rhs[current] : distances[current];
+            int currentDist = distances[current];
+            if (currentDist == currentRhs || key != Math.min(currentDist, currentRhs)) {
+                continue; // already consistent, or stale heap entry
+            }
+            if (++expanded > maxSettled) {
+                countSearch(start, expanded);
+                return false;
+            }
+            if (currentRhs < currentDist) {
+                distances[current] = currentRhs;
+                int entryCost = entryCosts[current];
+                if (entryCost == UNREACHABLE) {
+                    continue; // nobody can route through a blocked node
+                }
+                for (int e = reverseOffsets[current], end = reverseOffsets[current + 1]; e < end; e++) {
+                    int previous = sources[e];
+                    if (previous == destination) {
+                        continue;
+                    }
+                    int offered = currentRhs + reverseWeights[e] + entryCost;
+                    int previousRhs = seenEpoch[previous] == epoch ? rhs[previous] : distances[previous];
+                    if (offered < previousRhs) {
+                        rhs[previous] = offered;
+                        seenEpoch[previous] = epoch;
+                        nextHops[previous] = current;
+                        heap.push(previous, Math.min(offered, distances[previous]));
+                    } else if (offered == previousRhs && current < nextHops[previous]) {
+                        nextHops[previous] = current;
+                    }
+                }
+            } else {
+                distances[current] = UNREACHABLE;
+                updateNode(current, destination, table, space);
+                for (int e = reverseOffsets[current], end = reverseOffsets[current + 1]; e < end; e++) {
+                    int previous = sources[e];
+                    if (nextHops[previous] == current) {
+                        updateNode(previous, destination, table, space);
+                    }
+                }
+            }
+        }
+        countSearch(start, expanded);
+        return true;
+    }
+
+    /**
+     * Recomputes a node's rhs value and next hop during a repair, queueing it if its distance no longer matches.
+     */
+    private void updateNode(int node, int destination, NextHopTable table, SearchSpace space) {
+        if (node == destination) {
+            return; // the destination is always 0 away from itself
+        }
+        int best = bestDistance(node, table);
+        space.dist[node] = best;
+        space.seenEpoch[node] = space.epoch;
+        int distance = table.distances[node];
+        if (best != distance) {
+            space.heap.push(node, Math.min(best, distance));
+        }
+    }
+
+    /**
+     * Finds the cheapest way on from a node given the table's current distances, and records it as the node's next
+     * hop. Ties go to the neighbour with the lowest index.
+     * @return the distance to the destination through the best next hop, or UNREACHABLE if there is none
+     */
+    private int bestDistance(int node, NextHopTable table) {
+        GraphTopology topology = this.topology;
+        int[] offsets = topology.offsets;
+        int[] targets = topology.targets;
+        int[] weights = topology.weights;
+        int[] distances = table.distances;
+        int best = UNREACHABLE;
+        int bestHop = -1;
+        for (int e = offsets[node], end = offsets[node + 1]; e < end; e++) {
+            int next = targets[e];
+            int entryCost = entryCosts[next];
+            if (entryCost == UNREACHABLE || distances[next] == UNREACHABLE) {
+                continue;
+            }
+            int distance = distances[next] + weights[e] + entryCost;
+            if (distance < best || (distance == best && next < bestHop)) {
+                best = distance;
+                bestHop = next;
+            }
+        }
+        table.nextHops[node] = bestHop;
+        return best;
+    }
+
+    /**
+     * Compares the entry costs of the nodes that may have changed, or of every node if any may have, with the ones
+     * last seen and appends the nodes that changed to the change log, in index order.
+     * When the node count has changed every table is left behind, as its arrays no longer fit.
+     */
+    private synchronized void collectChanges() {
+        int nodeCount = nodesByIndex.size();
+        if (!costsDirty && entryCosts.length == nodeCount) {
+            Arrays.sort(touched, 0, touchedCount);
+            for (int t = 0; t < touchedCount; t++) {
+                int i = touched[t];
+                if (t > 0 && i == touched[t - 1]) {
+                    continue;
+                }
+                logChange(i);
+            }
+            touchedCount = 0;
+            oldestChange = Math.max(oldestChange, changeCount - changeLog.length);
+            return;
+        }
+        costsDirty = false;
+        touchedCount = 0;
+        if (entryCosts.length != nodeCount) {
+            entryCosts = new int[nodeCount];
+            changeLog = new int[Math.max(nodeCount, 1)];
+            for (int i = 0; i < nodeCount; i++) {
+                entryCosts[i] = entryCost(i);
+            }
+            changeCount++;
+            oldestChange = changeCount; // no table can be repaired across a change in size
+            hierarchy = null;
+            return;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            logChange(i);
+        }
+        oldestChange = Math.max(oldestChange, changeCount - changeLog.length);
+    }
+
+    private void logChange(int i) {
+        int cost = entryCost(i);
+        if (cost != entryCosts[i]) {
+            entryCosts[i] = cost;
+            if (hierarchy != null) hierarchy.costChanged(i);
+            changeLog[(int) (changeCount % changeLog.length)] = i;
+            changeCount++;
+        }
+    }
+
+    /**
+     * The cost of entering a node on top of the edge weight, as used by the next-hop tables.
+     * @return the congestion penalty, or UNREACHABLE if the node is blocked
+     */
+    private int entryCost(int index) {
+        if (state.blockedTicks[index] > 0) {
+            return UNREACHABLE;
+        }
+        return state.occupancy[index] * OCCUPIER_PENALTY + state.queueTime[index];
+    }
+
+    private void countSearch(long start, int expanded) {
+        if (countingSearches) {
+            searchCount.increment();
+            nodesExpanded.add(expanded);
+            searchNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sets whether searches are counted and timed. Off by default, as timing every search has a cost.
+     * @param countingSearches whether to count searches
+     */
+    void setCountingSearches(boolean countingSearches) {
+        this.countingSearches = countingSearches;
+    }
+
+    /**
+     * Gets the number of searches run while counting was on, including next-hop table builds.
+     * @return the total number of searches
+     */
+    long getSearchCount() {
+        return searchCount.sum();
+    }
+
+    /**
+     * Gets the number of nodes settled by searches run while counting was on.
+     * @return the total number of nodes expanded
+     */
+    long getNodesExpanded() {
+        return nodesExpanded.sum();
+    }
+
+    /**
+     * Gets the time spent in searches run while counting was on, summed over every thread that searched.
+     * @return the total search time in nanoseconds
+     */
+    long getSearchNanos() {
+        return searchNanos.sum();
+    }
+
+    /**
+     * Records that an edge cost or the topology has changed, so next-hop tables are out of date.
+     * The nodes whose costs changed are found the next time a table is used or the tick advances.
+     */
+    public void costsChanged() {
+        costsDirty = true;
+    }
+
+    /**
+     * Records that one node's entry cost may have changed, so that only it is compared rather than every node.
+     * @param index the node's index
+     */
+    synchronized void costChanged(int index) {
+        if (costsDirty) {
+            return;
+        }
+        if (touchedCount == touched.length) {
+            touched = Arrays.copyOf(touched, touchedCount * 2);
+        }
+        touched[touchedCount++] = index;
+    }
+
+    /**
+     * Records that edges have been added or removed, so the topology must be rebuilt.
+     */
+    public void topologyChanged() {
+        topology = null;
+        hierarchy = null;
+        oracle = null;
+        if (tablesByDestination.length() > 0) {
+            tablesByDestination = new AtomicReferenceArray<>(0);
+        }
+        costsDirty = true;
+    }
+
+    /**
+     * Advances the tick clock used to measure how stale a next-hop table is, collects the nodes whose costs changed
+     * over the last tick, and brings the topology and table storage up to date so that routing in the decide phase
+     * only reads them.
+     */
+    public void advanceTick() {
+        currentTick++;
+        getTopology();
+        collectChanges();
+        if (tablesByDestination.length() < nodesByIndex.size()) {
+            resizeTables();
+        }
+    }
+
+    /**
+     * Sets how many ticks an out of date next-hop table may keep being used before it is brought up to date. A
+     * table is reused while it is younger than the budget, so an out of date table is reused for up to
+     * stalenessTicks - 1 ticks after the change is seen. Changes are only seen when the tick advances, so 0 and 1
+     * are the same: a table is brought up to date the first time it is used on a tick after its costs changed.
+     * @param stalenessTicks the staleness budget in ticks
+     */
+    public void setStalenessTicks(int stalenessTicks) {
+        if (stalenessTicks < 0) {
+            throw new IllegalArgumentException("Staleness budget cannot be negative");
+        }
+        this.stalenessTicks = stalenessTicks;
+    }
+
+    public int getStalenessTicks() {
+        return stalenessTicks;
+    }
+
+    /**
+     * Sets how single searches from a node to a destination are run. Robots route with shared next-hop tables,
+     * which every mode builds the same way, so this only changes {@link #nextHop}.
+     * @param searchMode the search mode
+     */
+    public void setSearchMode(SearchMode searchMode) {
+        if (searchMode == null) {
+            throw new IllegalArgumentException("Search mode cannot be null");
+        }
+        this.searchMode = searchMode;
+    }
+
+    public SearchMode getSearchMode() {
+        return searchMode;
+    }
+
+    /**
+     * Sets how many cells across the clusters of the hierarchical search are. Larger clusters have fewer entrances
+     * between them, but cost more to bring up to date when congestion inside them changes. Keep it even so that the
+     * 2x2 lane blocks of generated maps are not split.
+     * @param clusterSize the cluster size in cells
+     */
+    public void setClusterSize(int clusterSize) {
+        if (clusterSize < 1) {
+            throw new IllegalArgumentException("Clusters must be at least one cell across");
+        }
+        this.clusterSize = clusterSize;
+        hierarchy = null;
+    }
+
+    public int getClusterSize() {
+        return clusterSize;
+    }
+
+    /**
+     * Builds a distance oracle over the current topology and uses it for landmark searches.
+     * @param landmarkCount how many landmarks to pick
+     * @return the oracle, which is dropped again if edges are added or removed
+     */
+    public DistanceOracle buildOracle(int landmarkCount) {
+        oracle = DistanceOracle.build(getTopology(), nodesByIndex, landmarkCount);
+        return oracle;
+    }
+
+    /**
+     * Sets the distance oracle landmark searches use, such as one read back alongside the map.
+     * @param oracle the oracle, or null to search with the Manhattan estimate alone
+     * @throws IllegalArgumentException if the oracle was built from different edges
+     */
+    public void setOracle(DistanceOracle oracle) {
+        if (oracle != null && !oracle.fits(getTopology())) {
+            throw new IllegalArgumentException("Distance oracle was built for a different map");
+        }
+        this.oracle = oracle;
+    }
+
+    public DistanceOracle getOracle() {
+        return oracle;
+    }
+
+    /**
+     * Sets whether out of date next-hop tables are repaired from the nodes whose costs changed, or always rebuilt
+     * from scratch. Both give the same routes; repairing does less work when few costs change at a time.
+     * @param incremental whether to repair tables
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Starts a new search on the calling thread's working arrays.
+     * @return the working arrays, sized for the graph and with a fresh epoch
+     */
+    private SearchSpace startSearch() {
+        SearchSpace space = searchSpaces.get();
+        int nodeCount = nodesByIndex.size();
+        if (space.dist.length < nodeCount) {
+            int size = Math.max(nodeCount, space.dist.length * 2);
+            space.dist = Arrays.copyOf(space.dist, size);
+            space.firstHop = Arrays.copyOf(space.firstHop, size);
+            space.seenEpoch = Arrays.copyOf(space.seenEpoch, size);
+            space.closedEpoch = Arrays.copyOf(space.closedEpoch, size);
+            space.reverseDist = Arrays.copyOf(space.reverseDist, size);
+            space.reverseSeenEpoch = Arrays.copyOf(space.reverseSeenEpoch, size);
+            space.reverseClosedEpoch = Arrays.copyOf(space.reverseClosedEpoch, size);
+        }
+        space.heap.clear();
+        space.reverseHeap.clear();
+        space.epoch++;
+        if (space.epoch == Integer.MAX_VALUE) { // stamps would become ambiguous, start again from a clean slate
+            Arrays.fill(space.seenEpoch, 0);
+            Arrays.fill(space.closedEpoch, 0);
+            Arrays.fill(space.reverseSeenEpoch, 0);
+            Arrays.fill(space.reverseClosedEpoch, 0);
+            space.epoch = 1;
+        }
+        return space;
+    }
+
+    /**
+     * The working state of a search, one per thread.
+     */
+    private static class SearchSpace {
+        int[] dist = new int[0];
+        int[] firstHop = new int[0]; // index of the node after the source on the best known path
+        int[] seenEpoch = new int[0]; // dist/firstHop are only valid when this equals epoch
+        int[] closedEpoch = new int[0]; // node has been settled in the current search when this equals epoch
+        int epoch = 0;
+        final IntMinHeap heap = new IntMinHeap();
+        // the backward half of a bidirectional search, stamped with the same epoch
+        int[] reverseDist = new int[0];
+        int[] reverseSeenEpoch = new int[0];
+        int[] reverseClosedEpoch = new int[0];
+        final IntMinHeap reverseHeap = new IntMinHeap();
+        // the landmarks a landmark search takes its bounds from
+        final int[] activeLandmarks = new int[DistanceOracle.ACTIVE_LANDMARKS];
+        final int[] landmarkBounds = new int[DistanceOracle.ACTIVE_LANDMARKS];
+    }
+
+    private static class NextHopTable {
+        static final int NEVER_BUILT = Integer.MIN_VALUE;
+
+        int[] nextHops = new int[0]; // index of the next node towards the destination, -1 if there is none
+        int[] distances = new int[0]; // cost of the cheapest path from each node to the destination, UNREACHABLE if there is none
+        int builtTick = NEVER_BUILT; // the tick the table was last built or repaired on
+        long appliedChanges; // the change count the table is up to date with
+        int repairBackoff; // rebuilds to do after the next repair that costs more than a rebuild, doubles each time
+        int rebuildsBeforeRepair; // rebuilds left until the table tries repairing again
+    }
+}
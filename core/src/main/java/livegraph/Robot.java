@@ -3,9 +3,15 @@ package livegraph;
 public class Robot<T, N> {
     final public T robotID;
     final public N destinationNodeId;
+    final public long spawnTick; // the graph tick the robot was spawned on, used to measure trip times
 
     public Robot(T robotID, N destinationNodeId) {
+        this(robotID, destinationNodeId, 0);
+    }
+
+    public Robot(T robotID, N destinationNodeId, long spawnTick) {
         this.robotID = robotID;
         this.destinationNodeId = destinationNodeId;
+        this.spawnTick = spawnTick;
     }
 }
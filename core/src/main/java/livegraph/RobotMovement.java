@@ -14,9 +14,13 @@ public class RobotMovement<R, N> {
     private int originY; // The origin y coordinate when starting movement (from the previous tile)
 
     public RobotMovement(Robot<R, N> robot, int edgeWeight, int originX, int originY) {
+        this(robot, edgeWeight, edgeWeight, originX, originY);
+    }
+
+    RobotMovement(Robot<R, N> robot, int edgeWeight, int remainingProgression, int originX, int originY) {
         this.robot = robot;
         this.totalEdgeWeight = edgeWeight;
-        this.remainingProgression = edgeWeight;
+        this.remainingProgression = remainingProgression;
         this.originX = originX;
         this.originY = originY;
     }
@@ -0,0 +1,61 @@
+package livegraph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The {@link RobotStore} slot of each robot in a graph, by robot ID. Graphs number their robots from 0, so IDs index
+ * an int array directly; any negative IDs given by hand-built robots go in a map instead.
+ */
+final class RobotRegistry {
+    private int[] slotByRobot = new int[64]; // slot + 1 for each robot ID, 0 if the robot is not in the graph
+    private final HashMap<Integer, Integer> slotByNegativeRobot = new HashMap<>();
+    private int robotCount = 0;
+
+    /**
+     * Records the slot a robot has been given.
+     * @param robotId the robot's ID
+     * @param slot the robot's slot
+     */
+    void place(int robotId, int slot) {
+        if (robotId < 0) {
+            if (slotByNegativeRobot.put(robotId, slot) == null) robotCount++;
+            return;
+        }
+        if (robotId >= slotByRobot.length) {
+            slotByRobot = Arrays.copyOf(slotByRobot, Math.max(robotId + 1, slotByRobot.length * 2));
+        }
+        if (slotByRobot[robotId] == 0) robotCount++;
+        slotByRobot[robotId] = slot + 1;
+    }
+
+    /**
+     * Records that a robot has left the graph.
+     * @param robotId the robot's ID
+     */
+    void remove(int robotId) {
+        if (robotId < 0) {
+            if (slotByNegativeRobot.remove(robotId) != null) robotCount--;
+        } else if (robotId < slotByRobot.length && slotByRobot[robotId] != 0) {
+            slotByRobot[robotId] = 0;
+            robotCount--;
+        }
+    }
+
+    /**
+     * Gets the slot of a robot.
+     * @param robotId the robot's ID
+     * @return the slot, or -1 if the robot is not in the graph
+     */
+    int slotOf(int robotId) {
+        if (robotId < 0) {
+            Integer slot = slotByNegativeRobot.get(robotId);
+            return slot == null ? -1 : slot;
+        }
+        return robotId < slotByRobot.length ? slotByRobot[robotId] - 1 : -1;
+    }
+
+    int size() {
+        return robotCount;
+    }
+}
@@ -0,0 +1,175 @@
+package livegraph;
+
+import java.util.Arrays;
+
+/**
+ * Every robot in a graph, held in parallel primitive arrays indexed by slot. A robot keeps its slot from spawning
+ * until it leaves the graph, and moving between nodes only rewrites the slot's fields, so ticking allocates nothing.
+ * Freed slots are reused through a free list threaded through the next array. The robots on a node form a linked
+ * list through the same array, starting from the node's first occupant in its {@link NodeState}.
+ */
+public final class RobotStore {
+    int[] ids = new int[0]; // the robot's ID
+    int[] destinations = new int[0]; // index of the node the robot is heading to
+    int[] nodes = new int[0]; // index of the node the robot occupies, -1 for a free slot
+    int[] originX = new int[0]; // coordinates of the node the robot is moving in from
+    int[] originY = new int[0];
+    long[] arrivalTicks = new long[0]; // the tick the robot has fully moved into its node by
+    int[] totalWeight = new int[0]; // weight of the edge the robot is moving along
+    long[] spawnTicks = new long[0]; // the graph tick the robot was spawned on
+    int[] next = new int[0]; // the next robot on the same node, or the next free slot. -1 for none
+
+    long tick = 0; // the graph's tick count, which the ticks left to arrive are counted from
+
+    private int freeHead = -1; // first free slot below highWater, -1 for none
+    private int highWater = 0; // slots at and above this have never been used
+    private final RobotRegistry slotsById = new RobotRegistry(); // the slot of each robot in the graph, by ID
+
+    RobotStore(int capacity) {
+        grow(capacity);
+    }
+
+    /**
+     * Takes a slot for a robot entering the graph, reusing a freed slot if there is one.
+     * The robot's position fields must be set by the caller.
+     * @param id the robot's ID
+     * @param destination index of the robot's destination node
+     * @param spawnTick the tick the robot was spawned on
+     * @return the robot's slot
+     */
+    int allocate(int id, int destination, long spawnTick) {
+        if (slotsById.slotOf(id) >= 0) {
+            throw new IllegalArgumentException("Robot " + id + " is already in the graph");
+        }
+        int slot;
+        if (freeHead >= 0) {
+            slot = freeHead;
+            freeHead = next[slot];
+        } else {
+            if (highWater == ids.length) {
+                grow(Math.max(16, ids.length * 2));
+            }
+            slot = highWater++;
+        }
+        ids[slot] = id;
+        destinations[slot] = destination;
+        spawnTicks[slot] = spawnTick;
+        next[slot] = -1;
+        slotsById.place(id, slot);
+        return slot;
+    }
+
+    /**
+     * Releases the slot of a robot leaving the graph. The robot must already be unlinked from its node.
+     * @param slot the robot's slot
+     */
+    void free(int slot) {
+        slotsById.remove(ids[slot]);
+        nodes[slot] = -1;
+        next[slot] = freeHead;
+        freeHead = slot;
+    }
+
+    /**
+     * Sets the movement of a robot into a node, starting on the current tick.
+     * @param slot the robot's slot
+     * @param node index of the node it is moving into
+     * @param edgeWeight weight of the edge it is moving along, the ticks it takes
+     * @param fromX x coordinate of the node it is moving from
+     * @param fromY y coordinate of the node it is moving from
+     */
+    void setMovement(int slot, int node, int edgeWeight, int fromX, int fromY) {
+        nodes[slot] = node;
+        arrivalTicks[slot] = tick + edgeWeight;
+        totalWeight[slot] = edgeWeight;
+        originX[slot] = fromX;
+        originY[slot] = fromY;
+    }
+
+    private void grow(int capacity) {
+        int from = ids.length;
+        ids = Arrays.copyOf(ids, capacity);
+        destinations = Arrays.copyOf(destinations, capacity);
+        nodes = Arrays.copyOf(nodes, capacity);
+        originX = Arrays.copyOf(originX, capacity);
+        originY = Arrays.copyOf(originY, capacity);
+        arrivalTicks = Arrays.copyOf(arrivalTicks, capacity);
+        totalWeight = Arrays.copyOf(totalWeight, capacity);
+        spawnTicks = Arrays.copyOf(spawnTicks, capacity);
+        next = Arrays.copyOf(next, capacity);
+        Arrays.fill(nodes, from, capacity, -1);
+    }
+
+    /**
+     * Gets the slot of a robot by its ID.
+     * @param robotId the robot's ID
+     * @return the slot, or -1 if the robot is not in the graph
+     */
+    public int slotOf(int robotId) {
+        return slotsById.slotOf(robotId);
+    }
+
+    /**
+     * Gets the number of robots in the graph.
+     * @return the number of robots
+     */
+    public int size() {
+        return slotsById.size();
+    }
+
+    public int getId(int slot) {
+        return ids[slot];
+    }
+
+    public int getDestination(int slot) {
+        return destinations[slot];
+    }
+
+    public int getNode(int slot) {
+        return nodes[slot];
+    }
+
+    public int getOriginX(int slot) {
+        return originX[slot];
+    }
+
+    public int getOriginY(int slot) {
+        return originY[slot];
+    }
+
+    /**
+     * Gets the ticks left until a robot has fully moved into its node. Robots are not stepped along their edge each
+     * tick; this is worked out from the tick they arrive on.
+     * @param slot the robot's slot
+     * @return the ticks left, 0 once the robot has arrived
+     */
+    public int getRemainingProgression(int slot) {
+        return (int) Math.max(0, arrivalTicks[slot] - tick);
+    }
+
+    /**
+     * Gets the tick a robot has fully moved into its node by, when it can move on from the next tick.
+     * @param slot the robot's slot
+     * @return the tick
+     */
+    public long getArrivalTick(int slot) {
+        return arrivalTicks[slot];
+    }
+
+    public int getTotalEdgeWeight(int slot) {
+        return totalWeight[slot];
+    }
+
+    public long getSpawnTick(int slot) {
+        return spawnTicks[slot];
+    }
+
+    /**
+     * Gets the next robot on the same node.
+     * @param slot the robot's slot
+     * @return the next robot's slot, or -1 if this is the last robot on its node
+     */
+    public int getNext(int slot) {
+        return next[slot];
+    }
+}
@@ -0,0 +1,46 @@
+package livegraph;
+
+/**
+ * SplitMix64 random streams whose states live in a long array, one stream per slot.
+ * Each node draws from its own slot, so results do not depend on the order nodes are visited in
+ * and nodes ticked on different threads never share random state.
+ */
+final class SplitMix {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private SplitMix() {}
+
+    /**
+     * Derives the starting state of one stream from a seed.
+     * @param seed the seed shared by all streams
+     * @param stream the stream number
+     * @return the state for the stream
+     */
+    static long seedFor(long seed, long stream) {
+        return mix64(seed + GOLDEN_GAMMA * (stream + 1));
+    }
+
+    static long nextLong(long[] states, int slot) {
+        return mix64(states[slot] += GOLDEN_GAMMA);
+    }
+
+    /**
+     * @return a uniform double in [0, 1)
+     */
+    static double nextDouble(long[] states, int slot) {
+        return (nextLong(states, slot) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return a uniform int in [0, bound)
+     */
+    static int nextInt(long[] states, int slot, int bound) {
+        return (int) (nextDouble(states, slot) * bound);
+    }
+
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,149 @@
+package livegraph;
+
+import java.util.Arrays;
+
+/**
+ * The strongly connected components of a {@link GraphTopology}: the largest sets of nodes that can each reach every
+ * other node of the set. A robot can only reach its destination if both lie in the same component, so a map whose
+ * nodes form a single component lets every robot reach every house.
+ *
+ * Components are found with Tarjan's algorithm, run iteratively over the topology's arrays so that long roads do not
+ * overflow the call stack.
+ */
+public final class StronglyConnectedComponents {
+    private final int[] components; // component of each node, by index
+    private final int[] sizes; // number of nodes in each component
+    private final int largest; // the component with the most nodes, -1 for an empty topology
+
+    private StronglyConnectedComponents(int[] components, int[] sizes) {
+        this.components = components;
+        this.sizes = sizes;
+        int best = -1;
+        for (int c = 0; c < sizes.length; c++) {
+            if (best < 0 || sizes[c] > sizes[best]) {
+                best = c;
+            }
+        }
+        largest = best;
+    }
+
+    /**
+     * Finds the strongly connected components of a topology.
+     * @param topology the topology
+     * @return the components, numbered so that no edge leads from a component to one with a higher number
+     */
+    public static StronglyConnectedComponents of(GraphTopology topology) {
+        return of(topology.getNodeCount(), topology.offsets, topology.targets);
+    }
+
+    /**
+     * Finds the strongly connected components of edges held in compressed-sparse-row form, for graphs that have
+     * not been built yet: the outgoing edges of node i are targets[offsets[i]] .. targets[offsets[i + 1] - 1].
+     * @param nodeCount the number of nodes
+     * @param offsets where each node's edges start, nodeCount + 1 long
+     * @param targets the node each edge leads to
+     * @return the components, numbered so that no edge leads from a component to one with a higher number
+     */
+    public static StronglyConnectedComponents of(int nodeCount, int[] offsets, int[] targets) {
+        int[] order = new int[nodeCount]; // 1 + the order each node was first visited in, 0 if not yet visited
+        int[] low = new int[nodeCount]; // lowest order reachable from the node's subtree through nodes still on the stack
+        int[] components = new int[nodeCount];
+        Arrays.fill(components, -1);
+        int[] stack = new int[nodeCount]; // visited nodes not yet assigned to a component
+        int stackSize = 0;
+        int[] callNodes = new int[nodeCount]; // the depth first search, as the node and next edge at each depth
+        int[] callEdges = new int[nodeCount];
+        int[] sizes = new int[Math.max(nodeCount, 1)];
+        int componentCount = 0;
+        int visited = 0;
+
+        for (int root = 0; root < nodeCount; root++) {
+            if (order[root] != 0) {
+                continue;
+            }
+            int depth = 0;
+            callNodes[0] = root;
+            callEdges[0] = offsets[root];
+            order[root] = low[root] = ++visited;
+            stack[stackSize++] = root;
+
+            while (depth >= 0) {
+                int node = callNodes[depth];
+                if (callEdges[depth] < offsets[node + 1]) {
+                    int next = targets[callEdges[depth]++];
+                    if (order[next] == 0) { // descend
+                        order[next] = low[next] = ++visited;
+                        stack[stackSize++] = next;
+                        depth++;
+                        callNodes[depth] = next;
+                        callEdges[depth] = offsets[next];
+                    } else if (components[next] < 0) { // still on the stack
+                        low[node] = Math.min(low[node], order[next]);
+                    }
+                    continue;
+                }
+
+                // every edge of the node has been followed
+                if (low[node] == order[node]) { // the node is the root of a component, pop it off the stack
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        components[member] = componentCount;
+                        sizes[componentCount]++;
+                    } while (member != node);
+                    componentCount++;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callNodes[depth];
+                    low[parent] = Math.min(low[parent], low[node]);
+                }
+            }
+        }
+        return new StronglyConnectedComponents(components, Arrays.copyOf(sizes, componentCount));
+    }
+
+    public int getComponentCount() {
+        return sizes.length;
+    }
+
+    /**
+     * @param index the index of a node
+     * @return the component the node is in
+     */
+    public int getComponent(int index) {
+        return components[index];
+    }
+
+    /**
+     * @param component a component
+     * @return the number of nodes in the component
+     */
+    public int getComponentSize(int component) {
+        return sizes[component];
+    }
+
+    /**
+     * @return the component with the most nodes, the first found on a tie, or -1 if there are no nodes
+     */
+    public int getLargestComponent() {
+        return largest;
+    }
+
+    /**
+     * @return whether every node can reach every other node
+     */
+    public boolean isStronglyConnected() {
+        return sizes.length <= 1;
+    }
+
+    /**
+     * Whether one node can reach the other and back.
+     * @param a the index of one node
+     * @param b the index of the other
+     * @return whether both are in the same component
+     */
+    public boolean isConnected(int a, int b) {
+        return components[a] == components[b];
+    }
+}
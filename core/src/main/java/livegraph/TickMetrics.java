@@ -0,0 +1,62 @@
+package livegraph;
+
+/**
+ * Measurements of one graph tick, taken when metrics are enabled with {@link Graph#setMetricsEnabled(boolean)}.
+ * Phase times are wall time on the ticking thread. Pathfinding time is summed over every thread that searched,
+ * and is part of the movement phase, which decides and commits every robot's move.
+ */
+public class TickMetrics {
+    public static final String CSV_HEADER = "tick,totalNanos,movementNanos,spawnNanos,pathfindingNanos,searches,nodesExpanded,queueEvents,blockEvents,allocatedBytes,robots,decidedNodes,incidents";
+
+    public final long tick;
+    public final long totalNanos;
+    public final long movementNanos;
+    public final long spawnNanos;
+    public final long pathfindingNanos;
+    public final long searches; // path searches, including next-hop table builds
+    public final long nodesExpanded; // nodes settled over all searches
+    public final int queueEvents; // robots that had to wait because their next node was full or blocked
+    public final int blockEvents; // nodes that became blocked, randomly or through congestion
+    public final long allocatedBytes; // bytes allocated by the ticking thread, -1 if the JVM cannot measure it
+    public final int robots; // robots in the graph after the tick
+    public final int decidedNodes; // nodes that decided, the rest were asleep
+    public final int incidents; // nodes blocked by a random incident, also counted in blockEvents
+
+    public TickMetrics(long tick, long totalNanos, long movementNanos, long spawnNanos, long pathfindingNanos, long searches,
+                       long nodesExpanded, int queueEvents, int blockEvents, long allocatedBytes, int robots,
+                       int decidedNodes, int incidents) {
+        this.tick = tick;
+        this.totalNanos = totalNanos;
+        this.movementNanos = movementNanos;
+        this.spawnNanos = spawnNanos;
+        this.pathfindingNanos = pathfindingNanos;
+        this.searches = searches;
+        this.nodesExpanded = nodesExpanded;
+        this.queueEvents = queueEvents;
+        this.blockEvents = blockEvents;
+        this.allocatedBytes = allocatedBytes;
+        this.robots = robots;
+        this.decidedNodes = decidedNodes;
+        this.incidents = incidents;
+    }
+
+    public double getNodesExpandedPerSearch() {
+        return searches == 0 ? 0 : (double) nodesExpanded / searches;
+    }
+
+    /**
+     * Formats these metrics as a CSV row matching {@link #CSV_HEADER}.
+     * @return the row, without a line ending
+     */
+    public String toCsvRow() {
+        return tick + "," + totalNanos + "," + movementNanos + "," + spawnNanos + "," + pathfindingNanos + "," + searches + ","
+            + nodesExpanded + "," + queueEvents + "," + blockEvents + "," + allocatedBytes + "," + robots + "," + decidedNodes + "," + incidents;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tick %d: %.2fms (movement %.2fms, spawn %.2fms, pathfinding %.2fms), %d searches, %.0f nodes/search, %d queued, %d blocked (%d incidents), %d bytes, %d robots, %d nodes decided",
+            tick, totalNanos / 1e6, movementNanos / 1e6, spawnNanos / 1e6, pathfindingNanos / 1e6, searches,
+            getNodesExpandedPerSearch(), queueEvents, blockEvents, incidents, allocatedBytes, robots, decidedNodes);
+    }
+}
@@ -0,0 +1,104 @@
+package livegraph;
+
+import java.util.Arrays;
+
+/**
+ * Chooses the nodes that decide on each tick, so that idle nodes cost nothing. A node is woken for the next tick
+ * while it has timers running or robots ready to move, and otherwise sleeps in a {@link TimingWheel} until the first
+ * robot moving into it arrives. Deciding a node that has nothing to do changes nothing, so waking a node more often
+ * than needed is always safe; missing a wake is not.
+ */
+final class TickScheduler {
+    private final TimingWheel wheel = new TimingWheel();
+    private long[] dueOn = new long[0]; // the tick each node was last taken to decide on, to drop repeated wakes
+    private int[] due = new int[16]; // the nodes deciding on the current tick, in index order
+    private int dueCount = 0;
+
+    /**
+     * Grows the per node arrays so that they can hold at least the given number of nodes.
+     * @param nodeCount the number of nodes
+     */
+    void ensureCapacity(int nodeCount) {
+        if (dueOn.length < nodeCount) {
+            int from = dueOn.length;
+            dueOn = Arrays.copyOf(dueOn, Math.max(nodeCount, dueOn.length * 2));
+            Arrays.fill(dueOn, from, dueOn.length, -1);
+        }
+    }
+
+    /**
+     * Wakes a node to decide on the next tick.
+     * @param node the node's index
+     */
+    void wake(int node) {
+        wheel.schedule(node, wheel.getNow() + 1);
+    }
+
+    /**
+     * Wakes a node to decide on a later tick.
+     * @param node the node's index
+     * @param tick the tick, after the current one
+     */
+    void wakeAt(int node, long tick) {
+        wheel.schedule(node, tick);
+    }
+
+    /**
+     * Moves on to the next tick and takes the nodes woken for it.
+     * @return the nodes to decide, in index order, with the count in {@link #getDueCount()}
+     */
+    int[] advance() {
+        due = wheel.advance(due);
+        long now = wheel.getNow();
+        int count = 0;
+        for (int i = 0, n = wheel.getDueCount(); i < n; i++) {
+            int node = due[i];
+            if (dueOn[node] != now) {
+                dueOn[node] = now;
+                due[count++] = node;
+            }
+        }
+        Arrays.sort(due, 0, count);
+        dueCount = count;
+        return due;
+    }
+
+    /**
+     * Moves on to the next tick and takes every node, whether woken or not.
+     * @param nodeCount the number of nodes
+     * @return the nodes to decide, in index order, with the count in {@link #getDueCount()}
+     */
+    int[] advanceAll(int nodeCount) {
+        int[] woken = wheel.advance(due); // drained so the wheel keeps up, every node decides anyway
+        if (woken.length < nodeCount) {
+            woken = new int[Math.max(nodeCount, woken.length * 2)];
+        }
+        long now = wheel.getNow();
+        for (int node = 0; node < nodeCount; node++) {
+            woken[node] = node;
+            dueOn[node] = now;
+        }
+        due = woken;
+        dueCount = nodeCount;
+        return due;
+    }
+
+    int getDueCount() {
+        return dueCount;
+    }
+
+    /**
+     * @param node the node's index
+     * @return whether the node decides on the current tick
+     */
+    boolean isDue(int node) {
+        return dueOn[node] == wheel.getNow();
+    }
+
+    /**
+     * @return the current tick
+     */
+    long getNow() {
+        return wheel.getNow();
+    }
+}
@@ -0,0 +1,129 @@
+package livegraph;
+
+import java.util.Arrays;
+
+/**
+ * A hierarchical timing wheel of node indices, each to be woken on a given tick. The first level has one bucket per
+ * tick for the next 256 ticks, and each level above has 64 buckets each covering a whole turn of the level below,
+ * so scheduling and waking cost the same however far ahead a node is woken. Wakes beyond the top level wait in an
+ * overflow bucket. Buckets of a higher level are spread into the levels below as the wheel reaches them.
+ *
+ * The wheel must be advanced one tick at a time. A node may be scheduled more than once, even for the same tick.
+ */
+final class TimingWheel {
+    private static final int LEVEL_0_BITS = 8;
+    private static final int LEVEL_BITS = 6;
+    private static final int LEVELS = 3;
+
+    private final Bucket[][] levels = new Bucket[LEVELS][];
+    private final Bucket overflow = new Bucket();
+    private long now = 0; // the last tick advanced to
+    private int dueCount = 0; // nodes taken by the last advance
+
+    TimingWheel() {
+        for (int level = 0; level < LEVELS; level++) {
+            levels[level] = new Bucket[1 << (level == 0 ? LEVEL_0_BITS : LEVEL_BITS)];
+            for (int slot = 0; slot < levels[level].length; slot++) {
+                levels[level][slot] = new Bucket();
+            }
+        }
+    }
+
+    /**
+     * Schedules a node to be woken.
+     * @param node the node's index
+     * @param tick the tick to wake it on, after the current tick
+     */
+    void schedule(int node, long tick) {
+        if (tick <= now) {
+            throw new IllegalArgumentException("Tick " + tick + " is not after the current tick " + now);
+        }
+        place(node, tick);
+    }
+
+    private void place(int node, long tick) {
+        long delta = tick - now;
+        int shift = 0;
+        for (int level = 0; level < LEVELS; level++) {
+            int bits = level == 0 ? LEVEL_0_BITS : LEVEL_BITS;
+            if (delta < 1L << (shift + bits)) {
+                levels[level][(int) (tick >>> shift) & ((1 << bits) - 1)].add(node, tick);
+                return;
+            }
+            shift += bits;
+        }
+        overflow.add(node, tick);
+    }
+
+    /**
+     * Moves the wheel on to the next tick and takes the nodes to wake on it.
+     * @param due where to put the nodes, grown if needed
+     * @return the array holding the nodes, which may be a new one, with the count in {@link #getDueCount()}
+     */
+    int[] advance(int[] due) {
+        now++;
+        // spread the buckets of higher levels that this tick starts into the levels below, highest first
+        int shift = LEVEL_0_BITS;
+        int level = 1;
+        while (level < LEVELS && (now & ((1L << shift) - 1)) == 0) {
+            shift += LEVEL_BITS;
+            level++;
+        }
+        if (level == LEVELS && (now & ((1L << shift) - 1)) == 0) {
+            respread(overflow);
+        }
+        for (level--, shift -= LEVEL_BITS; level >= 1; level--, shift -= LEVEL_BITS) {
+            respread(levels[level][(int) (now >>> shift) & ((1 << LEVEL_BITS) - 1)]);
+        }
+
+        Bucket bucket = levels[0][(int) now & ((1 << LEVEL_0_BITS) - 1)];
+        if (due.length < bucket.size) {
+            due = Arrays.copyOf(due, Math.max(bucket.size, due.length * 2));
+        }
+        System.arraycopy(bucket.nodes, 0, due, 0, bucket.size);
+        dueCount = bucket.size;
+        bucket.size = 0;
+        return due;
+    }
+
+    /**
+     * @return the number of nodes taken by the last {@link #advance(int[])}
+     */
+    int getDueCount() {
+        return dueCount;
+    }
+
+    private void respread(Bucket bucket) {
+        int size = bucket.size;
+        bucket.size = 0;
+        for (int i = 0; i < size; i++) {
+            place(bucket.nodes[i], bucket.ticks[i]); // never back into this bucket, unless it is the overflow
+        }
+    }
+
+    /**
+     * @return the last tick the wheel was advanced to
+     */
+    long getNow() {
+        return now;
+    }
+
+    /**
+     * The nodes to wake in one bucket, with the tick each is woken on so that higher levels can be spread out.
+     */
+    private static final class Bucket {
+        int size = 0;
+        int[] nodes = new int[4];
+        long[] ticks = new long[4];
+
+        void add(int node, long tick) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                ticks = Arrays.copyOf(ticks, size * 2);
+            }
+            nodes[size] = node;
+            ticks[size] = tick;
+            size++;
+        }
+    }
+}
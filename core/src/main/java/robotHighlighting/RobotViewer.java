@@ -1,89 +1,58 @@
 package robotHighlighting;
 
-//import java.awt.Point;
-import java.util.List;
-
-import livegraph.ConnectedNode;
+import io.github.whack25.simulation.SimulationSnapshot;
 import livegraph.Graph;
-import livegraph.GraphNode;
-import livegraph.RobotMovement;
 
 
 public class RobotViewer {
-    
-    public GraphNode<Integer, Integer> currentNode;
-    public RobotMovement<Integer, Integer> robot;
+
+    public int robotId = -1; // ID of the highlighted robot, -1 for none
+    public int robot = -1; // position of the highlighted robot in the latest snapshot, -1 if not found
 
     public RobotViewer() {}
 
-    // gets current node and robot from the coordinates of the player click
-    public boolean setNewRobot(double x, double y, Graph<Integer> graph) {
+    // gets the robot closest to the player click from the node at the clicked coordinates
+    public boolean setNewRobot(double x, double y, Graph<Integer> graph, SimulationSnapshot snapshot) {
         System.out.println("set new robot");
-        this.currentNode = graph.getNodeByCoordinates((int) x, (int) y);
-
-        if (currentNode != null && currentNode.getOccupiers().size() > 0) {
-            RobotMovement<Integer, Integer> closest = currentNode.getOccupiers().get(0);
-            // find closest robot to click
-            for (int i = 1; i < currentNode.getOccupiers().size(); i++) {
-                RobotMovement<Integer, Integer> currOccupier = currentNode.getOccupiers().get(i);
-                Point coords = calcRobotCoordinates(currentNode, currOccupier);
-                if (isLeftCloser(new Point(x,y), coords, calcRobotCoordinates(currentNode,closest))) {
-                    closest = currOccupier;
-                }
+        int node = graph.getNodeIndexByCoordinates((int) x, (int) y);
+        robotId = -1;
+        robot = -1;
+        if (node < 0 || node >= snapshot.getNodeCount()) return false;
+
+        Point click = new Point(x, y);
+        // find closest robot to click
+        for (int i = snapshot.getRobotsStart(node); i < snapshot.getRobotsEnd(node); i++) {
+            if (robot < 0 || isLeftCloser(click, calcRobotCoordinates(snapshot, i), calcRobotCoordinates(snapshot, robot))) {
+                robot = i;
             }
-            robot = closest;
-            return true;
         }
-        return false;
+        if (robot < 0) return false;
+        robotId = snapshot.getRobotId(robot);
+        return true;
     }
 
         /**
-         * updates robots location if it can be found
-         * @return true if found and updated, false if not found
+         * updates robots location from the snapshot, which finds it by ID in constant time wherever it has moved
+         * @return true if found and updated, false if it has left the graph
          */
-    public boolean updateRobotLocation() {
-        System.out.println("update new robot: " + currentNode);
-
-        if (currentNode == null) return false;
-        if (currentNode.getOccupiers().contains(robot)) {
+    public boolean updateRobotLocation(SimulationSnapshot snapshot) {
+        if (robotId < 0) return false;
+        robot = snapshot.findRobot(robotId);
+        if (robot >= 0) {
             return true;
-        } else { // check adjacent nodes for robot
-
-            List<ConnectedNode<Integer, Integer>> neighbours = currentNode.getNeighbours();
-            System.out.println(neighbours);
-            for (int i = 0; i < neighbours.size(); i++) {
-                List<RobotMovement<Integer, Integer>> lst = neighbours.get(i).node.getOccupiers();
-                for (int j = 0 ; j < lst.size(); j++) {
-                    if (robot != null && lst.get(j).getRobot().robotID == robot.getRobot().robotID) {
-                        currentNode = neighbours.get(i).node;
-                        robot = lst.get(j);
-                        return true;
-                    }
-
-                }
-   
-            } 
         }
-        
+
         System.out.println("delete new robot");
+        robotId = -1;
         return false;
     }
 
-    private Point calcRobotCoordinates(GraphNode<Integer, Integer> currentNode, RobotMovement<Integer, Integer> robotMovement) {
-        // Calculate the robot's coordinates based on its movement progress
-        double x = currentNode.getX();
-        double y = currentNode.getY();
-
-        // Adjust the coordinates based on the robot's movement
-        double progress = robotMovement.getRemainingProgression() / (double) robotMovement.getTotalEdgeWeight();
-            // If the robot is moving, calculate its new position
-            x = x + progress * (robotMovement.getOriginX() - x);
-            y = y + progress * (robotMovement.getOriginY() - y);
-
-        return new Point(x, y);
+    private Point calcRobotCoordinates(SimulationSnapshot snapshot, int robot) {
+        // The snapshot has already placed the robot along its movement
+        return new Point(snapshot.getRobotX(robot), snapshot.getRobotY(robot));
     }
 
     private boolean isLeftCloser(Point base, Point left, Point right) {
         return ( Math.pow(left.x - base.x, 2) + Math.pow(left.y - base.y, 2) ) < ( Math.pow(right.x - base.x, 2) + Math.pow(right.y - base.y, 2) );
     }
-}
\ No newline at end of file
+}